@@ -0,0 +1,104 @@
+package is.lab1.benchmark;
+
+import is.lab1.Lab1Application;
+import is.lab1.model.City;
+import is.lab1.model.Climate;
+import is.lab1.model.Coordinates;
+import is.lab1.model.Government;
+import is.lab1.model.Human;
+import is.lab1.model.StandardOfLiving;
+import is.lab1.repository.CityRepository;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Boots the application against an in-memory H2 database (PostgreSQL mode)
+ * and seeds it with {@code rows} deterministic cities.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkContext {
+
+    private static final int SEED_CHUNK = 1000;
+
+    @Param({"10000"})
+    public int rows;
+
+    public ConfigurableApplicationContext context;
+
+    @Setup(Level.Trial)
+    public void start() {
+        SpringApplication application = new SpringApplication(Lab1Application.class);
+        application.setAdditionalProfiles("bench");
+        context = application.run();
+
+        CityRepository repository = context.getBean(CityRepository.class);
+        TransactionTemplate tx = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        Random random = new Random(42);
+        for (int done = 0; done < rows; done += SEED_CHUNK) {
+            List<City> chunk = new ArrayList<>(SEED_CHUNK);
+            for (int i = done; i < Math.min(rows, done + SEED_CHUNK); i++) {
+                chunk.add(randomCity(random, i));
+            }
+            tx.executeWithoutResult(status -> repository.saveAll(chunk));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    public <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    /**
+     * Cities as the API returns them (ids, versions and dates set) without touching a database.
+     */
+    public static List<City> detachedCities(int count, long seed) {
+        Random random = new Random(seed);
+        List<City> cities = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            City city = randomCity(random, i);
+            city.setId(i + 1);
+            city.setVersion(1L);
+            city.setCreationDate(ZonedDateTime.now().minusDays(random.nextInt(1000)));
+            city.setEstablishmentDate(random.nextBoolean() ? new Date(random.nextInt() * 1000L) : null);
+            city.getCoordinates().setId(i + 1L);
+            if (city.getGovernor() != null) {
+                city.getGovernor().setId(i + 1L);
+            }
+            cities.add(city);
+        }
+        return cities;
+    }
+
+    public static City randomCity(Random random, int n) {
+        City city = new City(
+                "City-" + n + "-" + Integer.toString(random.nextInt(1 << 20), 36),
+                new Coordinates(random.nextDouble() * 1000 - 500, random.nextFloat() * 800 - 400),
+                1 + random.nextFloat() * 10_000,
+                1 + random.nextInt(10_000_000),
+                Climate.values()[random.nextInt(Climate.values().length)],
+                StandardOfLiving.values()[random.nextInt(StandardOfLiving.values().length)],
+                random.nextBoolean() ? new Human("Governor " + n, 150 + random.nextDouble() * 50) : null);
+        city.setCapital(random.nextInt(20) == 0);
+        city.setMetersAboveSeaLevel(random.nextInt(4) == 0 ? null : random.nextFloat() * 3000);
+        city.setGovernment(Government.values()[random.nextInt(Government.values().length)]);
+        return city;
+    }
+}
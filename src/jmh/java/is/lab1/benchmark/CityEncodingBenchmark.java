@@ -0,0 +1,113 @@
+package is.lab1.benchmark;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import is.lab1.config.JacksonConfig;
+import is.lab1.model.City;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode/decode cost of the payloads high-volume clients poll, a {@code /api/cities} page and a
+ * {@code /climate/{climate}} list, as JSON versus the CBOR and Smile encodings the API negotiates.
+ * Payload sizes are printed once per trial. Needs no database.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CityEncodingBenchmark {
+
+    @Param({"json", "cbor", "smile"})
+    public String format;
+
+    @Param({"10", "100", "1000"})
+    public int pageSize;
+
+    private ObjectMapper mapper;
+    private Page<City> page;
+    private List<City> climateList;
+    private byte[] pageBytes;
+    private byte[] climateListBytes;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(1 << 20);
+
+    @Setup
+    public void setUp() throws IOException {
+        // mirrors the application's mappers: Boot's date and unknown-property defaults plus the City module
+        mapper = Jackson2ObjectMapperBuilder.json()
+                .factory(factory(format))
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS,
+                        DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .modulesToInstall(new JacksonConfig().cityJsonModule())
+                .build();
+
+        List<City> cities = BenchmarkContext.detachedCities(pageSize, 21);
+        page = new PageImpl<>(cities, PageRequest.of(0, pageSize, Sort.by("id")), 10_000);
+        climateList = cities;
+        pageBytes = mapper.writeValueAsBytes(page);
+        climateListBytes = mapper.writeValueAsBytes(climateList);
+        System.out.printf("%n%s payload, %d cities: page %d bytes, climate list %d bytes%n",
+                format, pageSize, pageBytes.length, climateListBytes.length);
+    }
+
+    @Benchmark
+    public int encodePage() throws IOException {
+        buffer.reset();
+        mapper.writeValue(buffer, page);
+        return buffer.size();
+    }
+
+    @Benchmark
+    public PageBody decodePage() throws IOException {
+        return mapper.readValue(pageBytes, PageBody.class);
+    }
+
+    @Benchmark
+    public int encodeClimateList() throws IOException {
+        buffer.reset();
+        mapper.writeValue(buffer, climateList);
+        return buffer.size();
+    }
+
+    @Benchmark
+    public City[] decodeClimateList() throws IOException {
+        return mapper.readValue(climateListBytes, City[].class);
+    }
+
+    private static JsonFactory factory(String format) {
+        return switch (format) {
+            case "json" -> new JsonFactory();
+            case "cbor" -> new CBORFactory();
+            case "smile" -> new SmileFactory();
+            default -> throw new IllegalArgumentException("Unknown format: " + format);
+        };
+    }
+
+    // what a client binds a page response to
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class PageBody {
+        public List<City> content;
+        public long totalElements;
+        public int totalPages;
+    }
+}
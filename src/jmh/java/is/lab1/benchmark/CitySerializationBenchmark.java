@@ -0,0 +1,78 @@
+package is.lab1.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import is.lab1.config.JacksonConfig;
+import is.lab1.model.City;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Page&lt;City&gt; serialization with Jackson's bean serializers versus the specialized
+ * CityJsonSerializer / PageJsonSerializer path. Needs no database; run with the gc
+ * profiler (enabled in build.gradle) to compare gc.alloc.rate.norm per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CitySerializationBenchmark {
+
+    @Param({"10", "100"})
+    public int pageSize;
+
+    private ObjectMapper reflective;
+    private ObjectMapper specialized;
+    private Page<City> page;
+    private final OutputStream sink = new DiscardingOutputStream();
+
+    @Setup
+    public void setUp() {
+        // same date handling as Boot's auto-configured ObjectMapper
+        reflective = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        specialized = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .modulesToInstall(new JacksonConfig().cityJsonModule())
+                .build();
+
+        List<City> cities = BenchmarkContext.detachedCities(pageSize, 11);
+        page = new PageImpl<>(cities, PageRequest.of(0, pageSize, Sort.by("id")), 10_000);
+    }
+
+    @Benchmark
+    public void reflectivePage() throws Exception {
+        reflective.writeValue(sink, page);
+    }
+
+    @Benchmark
+    public void specializedPage() throws Exception {
+        specialized.writeValue(sink, page);
+    }
+
+    // ObjectMapper closes its target, so the sink must survive close()
+    private static final class DiscardingOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
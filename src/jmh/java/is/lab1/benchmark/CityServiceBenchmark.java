@@ -0,0 +1,88 @@
+package is.lab1.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import is.lab1.model.City;
+import is.lab1.repository.CityRepository;
+import is.lab1.service.CityService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CityServiceBenchmark {
+
+    private static final int INSERT_CHUNK = 100;
+
+    private CityService cityService;
+    private CityRepository cityRepository;
+    private ObjectMapper objectMapper;
+    private TransactionTemplate transactionTemplate;
+    private Page<City> page;
+    private Random random;
+    private int created;
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkContext ctx) {
+        cityService = ctx.bean(CityService.class);
+        cityRepository = ctx.bean(CityRepository.class);
+        objectMapper = ctx.bean(ObjectMapper.class);
+        transactionTemplate = new TransactionTemplate(ctx.bean(PlatformTransactionManager.class));
+        page = cityService.getCitiesByName(null, PageRequest.of(0, 50, Sort.by("id")));
+        random = new Random(7);
+    }
+
+    @Benchmark
+    public Page<City> getCitiesByName() {
+        return cityService.getCitiesByName("city-1", PageRequest.of(0, 10, Sort.by("id")));
+    }
+
+    @Benchmark
+    public Optional<City> findCityWithMinPopulation() {
+        return cityRepository.findCityWithMinPopulation();
+    }
+
+    @Benchmark
+    public Double avgMaslFn() {
+        return cityRepository.avgMaslFn();
+    }
+
+    @Benchmark
+    public City saveCityWithCascades() {
+        return cityService.saveCity(BenchmarkContext.randomCity(random, 1_000_000 + created++));
+    }
+
+    // per-city cost of a bulk-import sized chunk inserted in one transaction
+    @Benchmark
+    @OperationsPerInvocation(INSERT_CHUNK)
+    public List<City> saveAllChunk() {
+        List<City> chunk = new ArrayList<>(INSERT_CHUNK);
+        for (int i = 0; i < INSERT_CHUNK; i++) {
+            chunk.add(BenchmarkContext.randomCity(random, 2_000_000 + created++));
+        }
+        return transactionTemplate.execute(status -> cityRepository.saveAll(chunk));
+    }
+
+    @Benchmark
+    public byte[] serializePage() throws Exception {
+        return objectMapper.writeValueAsBytes(page);
+    }
+}
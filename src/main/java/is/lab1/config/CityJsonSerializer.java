@@ -0,0 +1,239 @@
+package is.lab1.config;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import is.lab1.model.City;
+import is.lab1.model.Climate;
+import is.lab1.model.Coordinates;
+import is.lab1.model.Government;
+import is.lab1.model.Human;
+import is.lab1.model.StandardOfLiving;
+
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Hand-written City serializer producing the same JSON as Jackson's bean serializer:
+ * field names and enum values are encoded once, primitives are written directly and
+ * creation dates are formatted by hand into a reused per-thread buffer.
+ */
+public class CityJsonSerializer extends StdSerializer<City> {
+
+    public static final CityJsonSerializer INSTANCE = new CityJsonSerializer();
+
+    private static final SerializedString ID = new SerializedString("id");
+    private static final SerializedString NAME = new SerializedString("name");
+    private static final SerializedString COORDINATES = new SerializedString("coordinates");
+    private static final SerializedString X = new SerializedString("x");
+    private static final SerializedString Y = new SerializedString("y");
+    private static final SerializedString CREATION_DATE = new SerializedString("creationDate");
+    private static final SerializedString AREA = new SerializedString("area");
+    private static final SerializedString POPULATION = new SerializedString("population");
+    private static final SerializedString ESTABLISHMENT_DATE = new SerializedString("establishmentDate");
+    private static final SerializedString CAPITAL = new SerializedString("capital");
+    private static final SerializedString METERS_ABOVE_SEA_LEVEL = new SerializedString("metersAboveSeaLevel");
+    private static final SerializedString CLIMATE = new SerializedString("climate");
+    private static final SerializedString GOVERNMENT = new SerializedString("government");
+    private static final SerializedString STANDARD_OF_LIVING = new SerializedString("standardOfLiving");
+    private static final SerializedString GOVERNOR = new SerializedString("governor");
+    private static final SerializedString HEIGHT = new SerializedString("height");
+    private static final SerializedString VERSION = new SerializedString("version");
+
+    private static final SerializedString[] CLIMATES = names(Climate.values());
+    private static final SerializedString[] GOVERNMENTS = names(Government.values());
+    private static final SerializedString[] STANDARDS = names(StandardOfLiving.values());
+
+    private static final ThreadLocal<char[]> DATE_BUFFER = ThreadLocal.withInitial(() -> new char[40]);
+
+    public CityJsonSerializer() {
+        super(City.class);
+    }
+
+    @Override
+    public void serialize(City city, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        gen.writeStartObject(city);
+
+        gen.writeFieldName(ID);
+        if (city.getId() == null) {
+            gen.writeNull();
+        } else {
+            gen.writeNumber(city.getId());
+        }
+        gen.writeFieldName(NAME);
+        gen.writeString(city.getName());
+
+        gen.writeFieldName(COORDINATES);
+        Coordinates coordinates = city.getCoordinates();
+        if (coordinates == null) {
+            gen.writeNull();
+        } else {
+            gen.writeStartObject(coordinates);
+            gen.writeFieldName(ID);
+            writeNumber(gen, coordinates.getId());
+            gen.writeFieldName(X);
+            writeNumber(gen, coordinates.getX());
+            gen.writeFieldName(Y);
+            writeNumber(gen, coordinates.getY());
+            gen.writeEndObject();
+        }
+
+        gen.writeFieldName(CREATION_DATE);
+        writeDate(gen, provider, city.getCreationDate());
+        gen.writeFieldName(AREA);
+        writeNumber(gen, city.getArea());
+        gen.writeFieldName(POPULATION);
+        gen.writeNumber(city.getPopulation());
+        gen.writeFieldName(ESTABLISHMENT_DATE);
+        if (city.getEstablishmentDate() == null) {
+            gen.writeNull();
+        } else {
+            provider.defaultSerializeDateValue(city.getEstablishmentDate(), gen);
+        }
+        gen.writeFieldName(CAPITAL);
+        gen.writeBoolean(city.isCapital());
+        gen.writeFieldName(METERS_ABOVE_SEA_LEVEL);
+        writeNumber(gen, city.getMetersAboveSeaLevel());
+        gen.writeFieldName(CLIMATE);
+        writeEnum(gen, CLIMATES, city.getClimate());
+        gen.writeFieldName(GOVERNMENT);
+        writeEnum(gen, GOVERNMENTS, city.getGovernment());
+        gen.writeFieldName(STANDARD_OF_LIVING);
+        writeEnum(gen, STANDARDS, city.getStandardOfLiving());
+
+        gen.writeFieldName(GOVERNOR);
+        Human governor = city.getGovernor();
+        if (governor == null) {
+            gen.writeNull();
+        } else {
+            gen.writeStartObject(governor);
+            gen.writeFieldName(ID);
+            writeNumber(gen, governor.getId());
+            gen.writeFieldName(NAME);
+            gen.writeString(governor.getName());
+            gen.writeFieldName(HEIGHT);
+            writeNumber(gen, governor.getHeight());
+            gen.writeEndObject();
+        }
+
+        gen.writeFieldName(VERSION);
+        writeNumber(gen, city.getVersion());
+        gen.writeEndObject();
+    }
+
+    private static void writeDate(JsonGenerator gen, SerializerProvider provider, ZonedDateTime value) throws IOException {
+        if (value == null) {
+            gen.writeNull();
+            return;
+        }
+        // anything but the default ISO string form goes through the regular java.time serializer
+        if (provider.isEnabled(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                || provider.isEnabled(SerializationFeature.WRITE_DATES_WITH_ZONE_ID)
+                || provider.getConfig().hasExplicitTimeZone()) {
+            provider.defaultSerializeValue(value, gen);
+            return;
+        }
+        char[] buffer = DATE_BUFFER.get();
+        int length = formatIsoOffsetDateTime(value, buffer);
+        if (length < 0) {
+            gen.writeString(DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(value));
+        } else {
+            gen.writeString(buffer, 0, length);
+        }
+    }
+
+    /**
+     * Allocation-free equivalent of DateTimeFormatter.ISO_OFFSET_DATE_TIME for years 0..9999
+     * and whole-minute offsets; returns -1 for anything else.
+     */
+    static int formatIsoOffsetDateTime(ZonedDateTime value, char[] out) {
+        int year = value.getYear();
+        int offset = value.getOffset().getTotalSeconds();
+        if (year < 0 || year > 9999 || offset % 60 != 0) {
+            return -1;
+        }
+        int i = 0;
+        i = digits(out, i, year, 4);
+        out[i++] = '-';
+        i = digits(out, i, value.getMonthValue(), 2);
+        out[i++] = '-';
+        i = digits(out, i, value.getDayOfMonth(), 2);
+        out[i++] = 'T';
+        i = digits(out, i, value.getHour(), 2);
+        out[i++] = ':';
+        i = digits(out, i, value.getMinute(), 2);
+        out[i++] = ':';
+        i = digits(out, i, value.getSecond(), 2);
+        int nano = value.getNano();
+        if (nano != 0) {
+            out[i++] = '.';
+            int digits = 9;
+            while (nano % 10 == 0) {
+                nano /= 10;
+                digits--;
+            }
+            i = digits(out, i, nano, digits);
+        }
+        if (offset == 0) {
+            out[i++] = 'Z';
+        } else {
+            out[i++] = offset < 0 ? '-' : '+';
+            int minutes = Math.abs(offset) / 60;
+            i = digits(out, i, minutes / 60, 2);
+            out[i++] = ':';
+            i = digits(out, i, minutes % 60, 2);
+        }
+        return i;
+    }
+
+    private static int digits(char[] out, int at, int value, int width) {
+        for (int p = at + width - 1; p >= at; p--) {
+            out[p] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return at + width;
+    }
+
+    private static void writeEnum(JsonGenerator gen, SerializedString[] names, Enum<?> value) throws IOException {
+        if (value == null) {
+            gen.writeNull();
+        } else {
+            gen.writeString(names[value.ordinal()]);
+        }
+    }
+
+    private static void writeNumber(JsonGenerator gen, Long value) throws IOException {
+        if (value == null) {
+            gen.writeNull();
+        } else {
+            gen.writeNumber(value);
+        }
+    }
+
+    private static void writeNumber(JsonGenerator gen, Double value) throws IOException {
+        if (value == null) {
+            gen.writeNull();
+        } else {
+            gen.writeNumber(value);
+        }
+    }
+
+    private static void writeNumber(JsonGenerator gen, Float value) throws IOException {
+        if (value == null) {
+            gen.writeNull();
+        } else {
+            gen.writeNumber(value);
+        }
+    }
+
+    private static SerializedString[] names(Enum<?>[] values) {
+        SerializedString[] names = new SerializedString[values.length];
+        for (Enum<?> value : values) {
+            names[value.ordinal()] = new SerializedString(value.name());
+        }
+        return names;
+    }
+}
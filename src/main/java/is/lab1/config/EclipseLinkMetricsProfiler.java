@@ -0,0 +1,96 @@
+package is.lab1.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.queries.DatabaseQuery;
+import org.eclipse.persistence.sessions.SessionProfiler;
+import org.eclipse.persistence.sessions.SessionProfilerAdapter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Session profiler that turns EclipseLink's own events into meters: shared-cache hits and
+ * misses, unit of work commits and rollbacks, optimistic lock failures, and the time spent
+ * executing SQL statements and fetching their rows. Installed on the server session, so
+ * every client session and unit of work created afterwards reports to it.
+ */
+public class EclipseLinkMetricsProfiler extends SessionProfilerAdapter {
+
+    private final Map<String, Counter> counters = new HashMap<>();
+    private final Map<String, Timer> timers = new HashMap<>();
+    private final ThreadLocal<Map<String, Long>> started = ThreadLocal.withInitial(HashMap::new);
+
+    public EclipseLinkMetricsProfiler(MeterRegistry registry) {
+        counters.put(SessionProfiler.CacheHits, Counter.builder("eclipselink.cache.requests")
+                .tag("result", "hit")
+                .description("Shared-cache lookups made by queries")
+                .register(registry));
+        counters.put(SessionProfiler.CacheMisses, Counter.builder("eclipselink.cache.requests")
+                .tag("result", "miss")
+                .description("Shared-cache lookups made by queries")
+                .register(registry));
+        counters.put(SessionProfiler.UowCommits, Counter.builder("eclipselink.unit-of-work")
+                .tag("outcome", "commit")
+                .register(registry));
+        counters.put(SessionProfiler.UowRollbacks, Counter.builder("eclipselink.unit-of-work")
+                .tag("outcome", "rollback")
+                .register(registry));
+        counters.put(SessionProfiler.OptimisticLockException, Counter.builder("eclipselink.optimistic-locks")
+                .description("Writes rejected by the version check")
+                .register(registry));
+        timers.put(SessionProfiler.StatementExecute, Timer.builder("eclipselink.statement")
+                .tag("phase", "execute")
+                .description("Time spent in JDBC statement execution")
+                .register(registry));
+        timers.put(SessionProfiler.RowFetch, Timer.builder("eclipselink.statement")
+                .tag("phase", "fetch")
+                .description("Time spent in JDBC statement execution")
+                .register(registry));
+    }
+
+    @Override
+    public void occurred(String operationName, AbstractSession session) {
+        Counter counter = counters.get(operationName);
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    @Override
+    public void occurred(String operationName, DatabaseQuery query, AbstractSession session) {
+        occurred(operationName, session);
+    }
+
+    @Override
+    public void startOperationProfile(String operationName) {
+        if (timers.containsKey(operationName)) {
+            started.get().put(operationName, System.nanoTime());
+        }
+    }
+
+    @Override
+    public void startOperationProfile(String operationName, DatabaseQuery query, int weight) {
+        startOperationProfile(operationName);
+    }
+
+    @Override
+    public void endOperationProfile(String operationName) {
+        Timer timer = timers.get(operationName);
+        if (timer == null) {
+            return;
+        }
+        Long start = started.get().remove(operationName);
+        if (start != null) {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void endOperationProfile(String operationName, DatabaseQuery query, int weight) {
+        endOperationProfile(operationName);
+    }
+}
@@ -0,0 +1,41 @@
+package is.lab1.config;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import is.lab1.model.City;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.domain.Page;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+@Configuration
+public class JacksonConfig {
+
+    public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+
+    // picked up by Boot's Jackson auto-configuration and registered on the shared ObjectMapper
+    @Bean
+    public Module cityJsonModule() {
+        SimpleModule module = new SimpleModule("CityJson");
+        module.addSerializer(City.class, CityJsonSerializer.INSTANCE);
+        module.addSerializer(Page.class, new PageJsonSerializer());
+        return module;
+    }
+
+    // binary formats for Accept / Content-Type application/cbor and application/x-jackson-smile;
+    // built from Boot's builder so they share the JSON mapper's modules and date settings,
+    // and they replace Spring MVC's defaults in place, so JSON stays the fallback for */*
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+    }
+
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
+    }
+}
@@ -1,10 +1,27 @@
 package is.lab1.config;
 
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
 import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.jpa.JpaEntityManagerFactory;
+import org.eclipse.persistence.sequencing.NativeSequence;
+import org.eclipse.persistence.sequencing.Sequence;
+import org.eclipse.persistence.sessions.server.ServerSession;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.dao.annotation.PersistenceExceptionTranslationPostProcessor;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 import org.springframework.orm.jpa.vendor.EclipseLinkJpaVendorAdapter;
@@ -12,15 +29,88 @@ import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
 import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
 
 @Configuration
 @EnableTransactionManagement
 @EnableJpaRepositories(basePackages = "is.lab1.repository")
 public class JpaConfig {
 
+    // falls back to 0 while the primary is idle, when replay has caught up with everything received
+    private static final String POSTGRES_LAG_QUERY =
+            "SELECT CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+            "ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) END";
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    @ConditionalOnProperty("city.datasource.replica.url")
+    @ConfigurationProperties("city.datasource.replica.hikari")
+    public HikariDataSource replicaDataSource(
+            DataSourceProperties primary,
+            @Value("${city.datasource.replica.url}") String url,
+            @Value("${city.datasource.replica.username:${spring.datasource.username:}}") String username,
+            @Value("${city.datasource.replica.password:${spring.datasource.password:}}") String password) {
+        HikariDataSource replica = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .driverClassName(primary.determineDriverClassName())
+                .url(url)
+                .username(username)
+                .password(password)
+                .build();
+        replica.setPoolName("replica");
+        replica.setReadOnly(true);
+        return replica;
+    }
+
+    @Bean
+    @ConditionalOnProperty("city.datasource.replica.url")
+    public ReplicaLagMonitor replicaLagMonitor(
+            @Qualifier("replicaDataSource") DataSource replicaDataSource,
+            @Value("${city.datasource.replica.lag-query:}") String lagQuery,
+            @Value("${city.datasource.replica.max-lag-ms:5000}") long maxLagMs,
+            @Value("${city.datasource.replica.lag-check-interval-ms:1000}") long checkIntervalMs) {
+        ReplicaLagMonitor monitor = new ReplicaLagMonitor(replicaDataSource,
+                lagQuery.isBlank() ? POSTGRES_LAG_QUERY : lagQuery, maxLagMs, checkIntervalMs);
+        monitor.check();
+        return monitor;
+    }
+
+    /**
+     * The primary pool, or when a replica is configured a router that sends read-only
+     * transactions to it. The router sits behind a lazy proxy so that the physical
+     * connection is chosen at the first statement, once the read-only flag is bound.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primaryDataSource,
+                                 @Qualifier("replicaDataSource") ObjectProvider<DataSource> replicaDataSource,
+                                 ObjectProvider<ReplicaLagMonitor> replicaLagMonitor) {
+        DataSource replica = replicaDataSource.getIfAvailable();
+        ReplicaLagMonitor monitor = replicaLagMonitor.getIfAvailable();
+        if (replica == null || monitor == null) {
+            return primaryDataSource;
+        }
+        ReadReplicaRoutingDataSource routing = new ReadReplicaRoutingDataSource(primaryDataSource, replica, monitor);
+        routing.afterPropertiesSet();
+        LazyConnectionDataSourceProxy lazy = new LazyConnectionDataSourceProxy(routing);
+        lazy.setDefaultAutoCommit(true);
+        lazy.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+        return lazy;
+    }
+
     @Bean
-    public LocalContainerEntityManagerFactoryBean entityManagerFactory(DataSource dataSource) {
+    public LocalContainerEntityManagerFactoryBean entityManagerFactory(
+            DataSource dataSource,
+            @Value("${spring.jpa.show-sql:false}") boolean showSql,
+            @Value("${city.datasource.replica.url:}") String replicaUrl) {
         LocalContainerEntityManagerFactoryBean em = new LocalContainerEntityManagerFactoryBean();
         em.setDataSource(dataSource);
         em.setPackagesToScan("is.lab1.model");
@@ -28,8 +118,11 @@ public class JpaConfig {
         EclipseLinkJpaVendorAdapter vendorAdapter = new EclipseLinkJpaVendorAdapter();
         vendorAdapter.setDatabasePlatform("org.eclipse.persistence.platform.database.PostgreSQLPlatform");
         vendorAdapter.setGenerateDdl(true);
-        vendorAdapter.setShowSql(true);
+        vendorAdapter.setShowSql(showSql);
         em.setJpaVendorAdapter(vendorAdapter);
+        if (!replicaUrl.isBlank()) {
+            em.setJpaDialect(new ReplicaReadJpaDialect());
+        }
 
         Properties jpaProps = new Properties();
         jpaProps.put(PersistenceUnitProperties.WEAVING, "false");
@@ -43,9 +136,25 @@ public class JpaConfig {
         return em;
     }
 
+    // fails startup before the first id block is taken from a sequence V6 has not migrated
+    @Bean
+    public PooledSequenceCheck pooledSequenceCheck(@Qualifier("primaryDataSource") DataSource primaryDataSource,
+                                                   EntityManagerFactory entityManagerFactory) {
+        ServerSession session = entityManagerFactory.unwrap(JpaEntityManagerFactory.class).getServerSession();
+        Map<String, Integer> allocationSizes = new TreeMap<>();
+        for (ClassDescriptor descriptor : session.getDescriptors().values()) {
+            Sequence sequence = descriptor.getSequence();
+            if (sequence instanceof NativeSequence && sequence.getPreallocationSize() > 1) {
+                allocationSizes.put(sequence.getName(), sequence.getPreallocationSize());
+            }
+        }
+        return new PooledSequenceCheck(primaryDataSource, allocationSizes);
+    }
+
     @Bean
-    public PlatformTransactionManager transactionManager(LocalContainerEntityManagerFactoryBean emf) {
-        JpaTransactionManager txManager = new JpaTransactionManager();
+    public PlatformTransactionManager transactionManager(LocalContainerEntityManagerFactoryBean emf,
+                                                         MeterRegistry meterRegistry) {
+        JpaTransactionManager txManager = new MeteredTransactionManager(meterRegistry);
         txManager.setEntityManagerFactory(emf.getObject());
         return txManager;
     }
@@ -0,0 +1,79 @@
+package is.lab1.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * JpaTransactionManager that records the wall time of every physical transaction
+ * as {@code city.tx.duration}, tagged with its outcome and read-only flag.
+ */
+public class MeteredTransactionManager extends JpaTransactionManager {
+
+    private final MeterRegistry meterRegistry;
+    private final Map<Object, Sample> running = new ConcurrentHashMap<>();
+
+    public MeteredTransactionManager(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition) {
+        Timer.Sample timer = Timer.start(meterRegistry);
+        super.doBegin(transaction, definition);
+        // only once begin succeeded: a failed begin never reaches doCleanupAfterCompletion
+        running.put(transaction, new Sample(timer, definition.isReadOnly()));
+    }
+
+    @Override
+    protected void doCommit(DefaultTransactionStatus status) {
+        outcome(status.getTransaction(), "commit");
+        super.doCommit(status);
+    }
+
+    @Override
+    protected void doRollback(DefaultTransactionStatus status) {
+        outcome(status.getTransaction(), "rollback");
+        super.doRollback(status);
+    }
+
+    @Override
+    protected void doCleanupAfterCompletion(Object transaction) {
+        try {
+            super.doCleanupAfterCompletion(transaction);
+        } finally {
+            Sample sample = running.remove(transaction);
+            if (sample != null) {
+                sample.timer.stop(Timer.builder("city.tx.duration")
+                        .description("Duration of JPA transactions from begin to cleanup")
+                        .tag("outcome", sample.outcome)
+                        .tag("readOnly", Boolean.toString(sample.readOnly))
+                        .publishPercentileHistogram()
+                        .register(meterRegistry));
+            }
+        }
+    }
+
+    private void outcome(Object transaction, String outcome) {
+        Sample sample = running.get(transaction);
+        if (sample != null) {
+            sample.outcome = outcome;
+        }
+    }
+
+    private static final class Sample {
+        private final Timer.Sample timer;
+        private final boolean readOnly;
+        private String outcome = "unknown";
+
+        private Sample(Timer.Sample timer, boolean readOnly) {
+            this.timer = timer;
+            this.readOnly = readOnly;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package is.lab1.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import is.lab1.model.City;
+import is.lab1.model.Coordinates;
+import is.lab1.model.Human;
+import is.lab1.service.CityCache;
+import is.lab1.service.CityFragmentCache;
+import is.lab1.service.CityWriteBehind;
+import jakarta.persistence.EntityManagerFactory;
+import org.eclipse.persistence.jpa.JpaEntityManagerFactory;
+import org.eclipse.persistence.sessions.server.ServerSession;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.List;
+
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder cityCacheMetrics(CityCache cityCache) {
+        return registry -> {
+            FunctionCounter.builder("city.cache.hits", cityCache, c -> c.getStats().getHits()).register(registry);
+            FunctionCounter.builder("city.cache.misses", cityCache, c -> c.getStats().getMisses()).register(registry);
+            FunctionCounter.builder("city.cache.evictions", cityCache, c -> c.getStats().getEvictions()).register(registry);
+            Gauge.builder("city.cache.size", cityCache, c -> c.getStats().getSize()).register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder cityFragmentCacheMetrics(CityFragmentCache cityFragmentCache) {
+        return registry -> {
+            FunctionCounter.builder("city.fragments.hits", cityFragmentCache, c -> c.getStats().getHits()).register(registry);
+            FunctionCounter.builder("city.fragments.misses", cityFragmentCache, c -> c.getStats().getMisses()).register(registry);
+            Gauge.builder("city.fragments.size", cityFragmentCache, c -> c.getStats().getSize()).register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder eclipseLinkMetrics(EntityManagerFactory entityManagerFactory) {
+        return registry -> {
+            ServerSession session = entityManagerFactory.unwrap(JpaEntityManagerFactory.class).getServerSession();
+            for (Class<?> entity : List.of(City.class, Coordinates.class, Human.class)) {
+                Gauge.builder("eclipselink.identity-map.size", session,
+                                s -> s.getIdentityMapAccessorInstance().getIdentityMap(entity).getSize())
+                        .tag("entity", entity.getSimpleName())
+                        .description("Objects held in the EclipseLink shared cache")
+                        .register(registry);
+            }
+            session.setProfiler(new EclipseLinkMetricsProfiler(registry));
+        };
+    }
+
+    @Bean
+    public MeterBinder replicaMetrics(ObjectProvider<ReplicaLagMonitor> replicaLagMonitor) {
+        return registry -> replicaLagMonitor.ifAvailable(monitor -> {
+            Gauge.builder("city.datasource.replica.lag", monitor, ReplicaLagMonitor::getLagMs)
+                    .baseUnit("milliseconds")
+                    .description("Replica lag seen by the last check, -1 if it failed")
+                    .register(registry);
+            Gauge.builder("city.datasource.replica.usable", monitor, m -> m.isReplicaUsable() ? 1 : 0)
+                    .description("1 while read-only transactions are routed to the replica")
+                    .register(registry);
+        });
+    }
+
+    @Bean
+    public MeterBinder cityWriteBehindMetrics(CityWriteBehind cityWriteBehind) {
+        return registry -> {
+            Gauge.builder("city.write-behind.queued", cityWriteBehind, w -> w.getStats().getQueued())
+                    .description("Accepted cities not yet written")
+                    .register(registry);
+            FunctionCounter.builder("city.write-behind.rejected", cityWriteBehind, w -> w.getStats().getRejected()).register(registry);
+            FunctionCounter.builder("city.write-behind.written", cityWriteBehind, w -> w.getStats().getWritten()).register(registry);
+            FunctionCounter.builder("city.write-behind.failed", cityWriteBehind, w -> w.getStats().getFailed()).register(registry);
+            FunctionCounter.builder("city.write-behind.batches", cityWriteBehind, w -> w.getStats().getBatches()).register(registry);
+        };
+    }
+
+    // reads the executor each channel actually dispatches on, which in virtual-thread mode is
+    // the one set in WebSocketConfig; a channel without a pool (the broker's by default) has no gauges
+    @Bean
+    public MeterBinder stompChannelMetrics(
+            @Qualifier("clientInboundChannel") AbstractSubscribableChannel inbound,
+            @Qualifier("clientOutboundChannel") AbstractSubscribableChannel outbound,
+            @Qualifier("brokerChannel") AbstractSubscribableChannel broker) {
+        return registry -> {
+            executorGauges(registry, "inbound", inbound);
+            executorGauges(registry, "outbound", outbound);
+            executorGauges(registry, "broker", broker);
+        };
+    }
+
+    private static void executorGauges(MeterRegistry registry, String channel, AbstractSubscribableChannel subscribable) {
+        if (!(subscribable instanceof ExecutorSubscribableChannel executorChannel)
+                || !(executorChannel.getExecutor() instanceof ThreadPoolTaskExecutor executor)) {
+            return;
+        }
+        Gauge.builder("city.ws.channel.queue", executor, e -> e.getThreadPoolExecutor().getQueue().size())
+                .tag("channel", channel)
+                .description("Messages waiting in the STOMP channel executor queue")
+                .register(registry);
+        Gauge.builder("city.ws.channel.active", executor, ThreadPoolTaskExecutor::getActiveCount)
+                .tag("channel", channel)
+                .register(registry);
+        Gauge.builder("city.ws.channel.pool", executor, ThreadPoolTaskExecutor::getPoolSize)
+                .tag("channel", channel)
+                .description("Threads currently in the STOMP channel executor")
+                .register(registry);
+    }
+}
@@ -0,0 +1,111 @@
+package is.lab1.config;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import is.lab1.model.City;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import java.io.IOException;
+
+/**
+ * Writes Spring Data pages in the same shape as the bean serializer does for PageImpl,
+ * with pre-encoded field names and City elements handed straight to CityJsonSerializer.
+ */
+@SuppressWarnings("rawtypes")
+public class PageJsonSerializer extends StdSerializer<Page> {
+
+    private static final SerializedString CONTENT = new SerializedString("content");
+    private static final SerializedString PAGEABLE = new SerializedString("pageable");
+    private static final SerializedString LAST = new SerializedString("last");
+    private static final SerializedString TOTAL_PAGES = new SerializedString("totalPages");
+    private static final SerializedString TOTAL_ELEMENTS = new SerializedString("totalElements");
+    private static final SerializedString SIZE = new SerializedString("size");
+    private static final SerializedString NUMBER = new SerializedString("number");
+    private static final SerializedString SORT = new SerializedString("sort");
+    private static final SerializedString FIRST = new SerializedString("first");
+    private static final SerializedString NUMBER_OF_ELEMENTS = new SerializedString("numberOfElements");
+    private static final SerializedString EMPTY = new SerializedString("empty");
+    private static final SerializedString SORTED = new SerializedString("sorted");
+    private static final SerializedString UNSORTED = new SerializedString("unsorted");
+    private static final SerializedString OFFSET = new SerializedString("offset");
+    private static final SerializedString PAGE_NUMBER = new SerializedString("pageNumber");
+    private static final SerializedString PAGE_SIZE = new SerializedString("pageSize");
+    private static final SerializedString PAGED = new SerializedString("paged");
+    private static final SerializedString UNPAGED = new SerializedString("unpaged");
+
+    public PageJsonSerializer() {
+        super(Page.class);
+    }
+
+    @Override
+    public void serialize(Page page, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        gen.writeStartObject(page);
+
+        gen.writeFieldName(CONTENT);
+        gen.writeStartArray();
+        for (Object element : page.getContent()) {
+            if (element instanceof City city) {
+                CityJsonSerializer.INSTANCE.serialize(city, gen, provider);
+            } else {
+                provider.defaultSerializeValue(element, gen);
+            }
+        }
+        gen.writeEndArray();
+
+        gen.writeFieldName(PAGEABLE);
+        Pageable pageable = page.getPageable();
+        if (pageable.isPaged()) {
+            gen.writeStartObject();
+            gen.writeFieldName(PAGE_NUMBER);
+            gen.writeNumber(pageable.getPageNumber());
+            gen.writeFieldName(PAGE_SIZE);
+            gen.writeNumber(pageable.getPageSize());
+            gen.writeFieldName(SORT);
+            writeSort(gen, pageable.getSort());
+            gen.writeFieldName(OFFSET);
+            gen.writeNumber(pageable.getOffset());
+            gen.writeFieldName(PAGED);
+            gen.writeBoolean(true);
+            gen.writeFieldName(UNPAGED);
+            gen.writeBoolean(false);
+            gen.writeEndObject();
+        } else {
+            provider.defaultSerializeValue(pageable, gen);
+        }
+
+        gen.writeFieldName(TOTAL_PAGES);
+        gen.writeNumber(page.getTotalPages());
+        gen.writeFieldName(TOTAL_ELEMENTS);
+        gen.writeNumber(page.getTotalElements());
+        gen.writeFieldName(LAST);
+        gen.writeBoolean(page.isLast());
+        gen.writeFieldName(SIZE);
+        gen.writeNumber(page.getSize());
+        gen.writeFieldName(NUMBER);
+        gen.writeNumber(page.getNumber());
+        gen.writeFieldName(SORT);
+        writeSort(gen, page.getSort());
+        gen.writeFieldName(NUMBER_OF_ELEMENTS);
+        gen.writeNumber(page.getNumberOfElements());
+        gen.writeFieldName(FIRST);
+        gen.writeBoolean(page.isFirst());
+        gen.writeFieldName(EMPTY);
+        gen.writeBoolean(page.isEmpty());
+        gen.writeEndObject();
+    }
+
+    private static void writeSort(JsonGenerator gen, Sort sort) throws IOException {
+        gen.writeStartObject();
+        gen.writeFieldName(EMPTY);
+        gen.writeBoolean(sort.isEmpty());
+        gen.writeFieldName(SORTED);
+        gen.writeBoolean(sort.isSorted());
+        gen.writeFieldName(UNSORTED);
+        gen.writeBoolean(sort.isUnsorted());
+        gen.writeEndObject();
+    }
+}
@@ -0,0 +1,52 @@
+package is.lab1.config;
+
+import org.springframework.beans.factory.InitializingBean;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * Refuses to start when a PostgreSQL id sequence does not step by the allocation size
+ * EclipseLink pools ids with. EclipseLink treats each nextval as the end of a whole block,
+ * so a sequence still incrementing by 1 hands out overlapping blocks and ids collide.
+ * Sequences that do not exist yet are skipped: EclipseLink creates them with the right step.
+ * The migration that brings existing sequences in line is db/migration/V6__pooled_id_sequences.sql.
+ */
+public class PooledSequenceCheck implements InitializingBean {
+
+    private static final String INCREMENT_SQL =
+            "SELECT increment_by FROM pg_sequences WHERE schemaname = current_schema() AND sequencename = ?";
+
+    private final DataSource dataSource;
+    private final Map<String, Integer> allocationSizes;
+
+    public PooledSequenceCheck(DataSource dataSource, Map<String, Integer> allocationSizes) {
+        this.dataSource = dataSource;
+        this.allocationSizes = allocationSizes;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            if (!"PostgreSQL".equals(connection.getMetaData().getDatabaseProductName())) {
+                return;
+            }
+            try (PreparedStatement statement = connection.prepareStatement(INCREMENT_SQL)) {
+                for (Map.Entry<String, Integer> entry : allocationSizes.entrySet()) {
+                    statement.setString(1, entry.getKey());
+                    try (ResultSet rs = statement.executeQuery()) {
+                        if (rs.next() && rs.getLong(1) != entry.getValue()) {
+                            throw new IllegalStateException("Sequence " + entry.getKey() + " increments by "
+                                    + rs.getLong(1) + " but ids are allocated in blocks of " + entry.getValue()
+                                    + "; run db/migration/V6__pooled_id_sequences.sql with the application stopped");
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
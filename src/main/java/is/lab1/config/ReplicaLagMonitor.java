@@ -0,0 +1,75 @@
+package is.lab1.config;
+
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically measures how far the replica is behind the primary. Read-only
+ * transactions go to the replica only while the last check succeeded and the
+ * lag was within {@code maxLagMs}; otherwise they fall back to the primary.
+ * <p>
+ * The lag query must return the lag in seconds as its first column; a NULL
+ * result (e.g. a server that is not replaying WAL) counts as unusable.
+ * <p>
+ * A verdict is only trusted for {@link #STALE_AFTER_CHECKS} check intervals: when the
+ * scheduler falls behind and no check has succeeded since, the replica counts as unusable.
+ */
+public class ReplicaLagMonitor {
+
+    private static final int QUERY_TIMEOUT_SECONDS = 2;
+    static final int STALE_AFTER_CHECKS = 3;
+
+    private final DataSource replica;
+    private final String lagQuery;
+    private final long maxLagMs;
+    private final long staleAfterMs;
+
+    private volatile boolean usable;
+    private volatile long lagMs = -1;
+    private volatile long checkedAtNanos;
+
+    public ReplicaLagMonitor(DataSource replica, String lagQuery, long maxLagMs, long checkIntervalMs) {
+        this.replica = replica;
+        this.lagQuery = lagQuery;
+        this.maxLagMs = maxLagMs;
+        this.staleAfterMs = STALE_AFTER_CHECKS * checkIntervalMs;
+    }
+
+    public boolean isReplicaUsable() {
+        return usable && System.nanoTime() - checkedAtNanos <= TimeUnit.MILLISECONDS.toNanos(staleAfterMs);
+    }
+
+    /** Lag seen by the last successful check in milliseconds, or -1 if it failed. */
+    public long getLagMs() {
+        return lagMs;
+    }
+
+    @Scheduled(fixedDelayString = "${city.datasource.replica.lag-check-interval-ms:1000}")
+    public void check() {
+        long lag = -1;
+        try (Connection connection = replica.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+            try (ResultSet rs = statement.executeQuery(lagQuery)) {
+                if (rs.next()) {
+                    double seconds = rs.getDouble(1);
+                    if (!rs.wasNull()) {
+                        lag = Math.max(0, Math.round(seconds * 1000));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            lag = -1;
+        }
+        lagMs = lag;
+        // written before usable, so a reader that sees the new verdict also sees its time
+        checkedAtNanos = System.nanoTime();
+        usable = lag >= 0 && lag <= maxLagMs;
+    }
+}
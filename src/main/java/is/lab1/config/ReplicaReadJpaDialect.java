@@ -0,0 +1,28 @@
+package is.lab1.config;
+
+import jakarta.persistence.EntityManager;
+import org.eclipse.persistence.sessions.UnitOfWork;
+import org.springframework.orm.jpa.vendor.EclipseLinkJpaDialect;
+import org.springframework.transaction.TransactionDefinition;
+
+import java.sql.SQLException;
+
+/**
+ * EclipseLinkJpaDialect only begins the database transaction early for read-write
+ * transactions, so read-only queries run on a shared-session connection and whatever they
+ * read lands in the shared cache. With a replica that would let replica state be served
+ * to later primary reads. Beginning read-only transactions early as well keeps them on the
+ * transaction's connection, and EclipseLink does not cache objects read inside one.
+ */
+public class ReplicaReadJpaDialect extends EclipseLinkJpaDialect {
+
+    @Override
+    public Object beginTransaction(EntityManager entityManager, TransactionDefinition definition)
+            throws SQLException {
+        Object transactionData = super.beginTransaction(entityManager, definition);
+        if (definition.isReadOnly()) {
+            entityManager.unwrap(UnitOfWork.class).beginEarlyTransaction();
+        }
+        return transactionData;
+    }
+}
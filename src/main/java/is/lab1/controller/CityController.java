@@ -1,31 +1,87 @@
 package is.lab1.controller;
 
+import is.lab1.config.JacksonConfig;
+import is.lab1.config.ReadReplicaRoutingDataSource;
+import is.lab1.dto.BulkImportResult;
+import is.lab1.dto.CacheStats;
+import is.lab1.dto.CityChangeBatch;
+import is.lab1.dto.CityFacets;
+import is.lab1.dto.CityLocation;
+import is.lab1.dto.CitySummary;
+import is.lab1.dto.CityWriteStats;
+import is.lab1.dto.CityWriteStatus;
+import is.lab1.dto.CursorSlice;
+import is.lab1.dto.RelocationRequest;
+import is.lab1.exception.BadRequestException;
+import is.lab1.exception.PreconditionFailedException;
 import is.lab1.model.City;
 import is.lab1.model.Climate;
+import is.lab1.model.StandardOfLiving;
+import is.lab1.service.CityBulkDeleteService;
+import is.lab1.service.CityChangeFeed;
+import is.lab1.service.CityExportService;
+import is.lab1.service.CityFacetIndex;
+import is.lab1.service.CityImportService;
+import is.lab1.service.CityFields;
 import is.lab1.service.CityService;
+import is.lab1.service.CityTableVersion;
+import is.lab1.service.CityWriteBehind;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import jakarta.validation.Valid;
 
 
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/api/cities")
 public class CityController {
     
+    private static final String RESPOND_ASYNC = "respond-async";
+    private static final MediaType SMILE = MediaType.valueOf(JacksonConfig.APPLICATION_SMILE_VALUE);
+    private static final String CBOR_SUFFIX = "+cbor";
+    private static final String SMILE_SUFFIX = "+smile";
+
     private final CityService cityService;
+    private final CityImportService cityImportService;
+    private final CityExportService cityExportService;
+    private final CityChangeFeed cityChangeFeed;
+    private final CityTableVersion cityTableVersion;
+    private final CityWriteBehind cityWriteBehind;
+    private final CityBulkDeleteService cityBulkDeleteService;
 
     @Autowired
-    public CityController(CityService cityService) {
+    public CityController(CityService cityService, CityImportService cityImportService,
+                          CityExportService cityExportService, CityChangeFeed cityChangeFeed,
+                          CityTableVersion cityTableVersion, CityWriteBehind cityWriteBehind,
+                          CityBulkDeleteService cityBulkDeleteService) {
         this.cityService = cityService;
+        this.cityImportService = cityImportService;
+        this.cityExportService = cityExportService;
+        this.cityChangeFeed = cityChangeFeed;
+        this.cityTableVersion = cityTableVersion;
+        this.cityWriteBehind = cityWriteBehind;
+        this.cityBulkDeleteService = cityBulkDeleteService;
     }
 
     @GetMapping
@@ -34,38 +90,129 @@ public class CityController {
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "id") String sortBy,
             @RequestParam(defaultValue = "asc") String sortDir,
-            @RequestParam(required = false) String name) {
+            @RequestParam(required = false) String name,
+            WebRequest request) {
         
         Sort sort = sortDir.equalsIgnoreCase("desc") ? 
             Sort.by(sortBy).descending() : Sort.by(sortBy).ascending();
         
         Pageable pageable = PageRequest.of(page, size, sort);
         
-        Page<City> cities = cityService.getCitiesByName(name, pageable);
-        return ResponseEntity.ok(cities);
+        return ifTableModified(request, () -> cityService.getCitiesByName(name, pageable));
+    }
+    
+    @GetMapping("/list")
+    public ResponseEntity<Page<Map<String, Object>>> getCityList(
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "id") String sortBy,
+            @RequestParam(defaultValue = "asc") String sortDir,
+            @RequestParam(required = false) String name,
+            @RequestParam(required = false) String fields,
+            WebRequest request) {
+        Sort sort = sortDir.equalsIgnoreCase("desc") ?
+            Sort.by(sortBy).descending() : Sort.by(sortBy).ascending();
+        List<String> fieldList = CityFields.parse(fields);
+        return ifTableModified(request, () -> cityService.getCityFields(name, fieldList, PageRequest.of(page, size, sort)));
+    }
+    
+    @GetMapping(params = "after")
+    public ResponseEntity<CursorSlice<City>> getCitiesAfter(
+            @RequestParam String after,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "id") String sortBy,
+            @RequestParam(defaultValue = "asc") String sortDir,
+            @RequestParam(required = false) String name,
+            WebRequest request) {
+        return ifTableModified(request, () -> cityService.getCitiesAfter(name, sortBy, sortDir, after, size));
     }
     
     @GetMapping("/{id}")
-    public ResponseEntity<City> getCityById(@PathVariable Integer id) {
+    public ResponseEntity<City> getCityById(@PathVariable Integer id, WebRequest request) {
+        // the table can only be older than this row, so its Last-Modified is a safe bound;
+        // the lookup itself is usually served by CityCache
+        CityTableVersion.Snapshot version = cityTableVersion.current();
         Optional<City> city = cityService.getCityById(id);
-        return city.map(ResponseEntity::ok)
-                  .orElse(ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+        if (city.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        String eTag = eTag(city.get(), request);
+        if (request.checkNotModified(eTag, version.getLastModified())) {
+            return notModified();
+        }
+        return revalidated(eTag, version.getLastModified()).body(city.get());
     }
     
+    // with Prefer: respond-async the city is queued for CityWriteBehind and its status URL returned
     @PostMapping
-    public ResponseEntity<City> createCity(@RequestBody @Valid City city) {
+    public ResponseEntity<?> createCity(@RequestBody @Valid City city,
+                                        @RequestHeader(value = "Prefer", required = false) String prefer,
+                                        WebRequest request) {
+        city.setId(null);
+        if (prefer != null && prefer.contains(RESPOND_ASYNC)) {
+            CityWriteStatus status = cityWriteBehind.submit(city);
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/cities/writes/" + status.getId()))
+                    .header("Preference-Applied", RESPOND_ASYNC)
+                    .body(status);
+        }
         City savedCity = cityService.saveCity(city);
-        return ResponseEntity.ok(savedCity);
+        return ResponseEntity.ok().eTag(eTag(savedCity, request)).varyBy(HttpHeaders.ACCEPT).body(savedCity);
     }
     
-    @PutMapping("/{id}")
-    public ResponseEntity<City> updateCity(@PathVariable Integer id, @RequestBody @Valid City city) {
-        if (cityService.getCityById(id).isPresent()) {
-            city.setId(id);
-            City updatedCity = cityService.saveCity(city);
-            return ResponseEntity.ok(updatedCity);
+    @GetMapping("/writes/{id}")
+    public ResponseEntity<CityWriteStatus> getWriteStatus(@PathVariable Integer id) {
+        Optional<CityWriteStatus> status = cityWriteBehind.getStatus(id);
+        if (status.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().cacheControl(CacheControl.noStore());
+        if (status.get().getState() == CityWriteStatus.State.WRITTEN) {
+            response.location(URI.create("/api/cities/" + id));
+        }
+        return response.body(status.get());
+    }
+    
+    @GetMapping("/writes/stats")
+    public ResponseEntity<CityWriteStats> getWriteStats() {
+        return ResponseEntity.ok(cityWriteBehind.getStats());
+    }
+    
+    @PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE,
+            MediaType.APPLICATION_CBOR_VALUE, JacksonConfig.APPLICATION_SMILE_VALUE})
+    public ResponseEntity<BulkImportResult> importCities(HttpServletRequest request) throws IOException {
+        MediaType contentType = MediaType.parseMediaType(request.getContentType());
+        CityImportService.Format format = CityImportService.Format.JSON;
+        if (MediaType.APPLICATION_CBOR.includes(contentType)) {
+            format = CityImportService.Format.CBOR;
+        } else if (MediaType.valueOf(JacksonConfig.APPLICATION_SMILE_VALUE).includes(contentType)) {
+            format = CityImportService.Format.SMILE;
+        }
+        BulkImportResult result = cityImportService.importCities(request.getInputStream(), format);
+        return ResponseEntity.ok(result);
+    }
+    
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportCities(
+            @RequestParam(defaultValue = "ndjson") String format) {
+        boolean csv = format.equalsIgnoreCase("csv");
+        if (!csv && !format.equalsIgnoreCase("ndjson")) {
+            throw new BadRequestException("Unsupported export format: " + format);
         }
-        return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        CityExportService.Format exportFormat = csv ? CityExportService.Format.CSV : CityExportService.Format.NDJSON;
+        StreamingResponseBody body = out -> cityExportService.export(exportFormat, out);
+        return ResponseEntity.ok()
+                .contentType(csv ? new MediaType("text", "csv") : MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=cities." + (csv ? "csv" : "ndjson"))
+                .body(body);
+    }
+    
+    @PutMapping("/{id}")
+    public ResponseEntity<City> updateCity(@PathVariable Integer id, @RequestBody @Valid City city,
+                                           @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                           WebRequest request) {
+        City updatedCity = cityService.updateCity(id, city, parseIfMatch(ifMatch));
+        return ResponseEntity.ok().eTag(eTag(updatedCity, request)).varyBy(HttpHeaders.ACCEPT).body(updatedCity);
     }
     
     @DeleteMapping("/{id}")
@@ -75,11 +222,59 @@ public class CityController {
     }
     
     @GetMapping("/search")
-    public ResponseEntity<List<City>> searchCitiesByName(@RequestParam String name) {
-        List<City> cities = cityService.findCitiesByNameContaining(name);
+    public ResponseEntity<List<City>> searchCitiesByName(@RequestParam String name,
+                                                         @RequestParam(defaultValue = "100") int limit) {
+        List<City> cities = cityService.findCitiesByNameContaining(name, limit);
         return ResponseEntity.ok(cities);
     }
     
+    @GetMapping("/geo/box")
+    public ResponseEntity<List<CityLocation>> getCitiesInBox(
+            @RequestParam double minX, @RequestParam double minY,
+            @RequestParam double maxX, @RequestParam double maxY,
+            @RequestParam(defaultValue = "5000") int limit,
+            WebRequest request) {
+        return ifTableModified(request, () -> cityService.getCitiesInBox(minX, minY, maxX, maxY, limit));
+    }
+    
+    @GetMapping("/geo/radius")
+    public ResponseEntity<List<CityLocation>> getCitiesWithin(
+            @RequestParam double x, @RequestParam double y, @RequestParam double radius,
+            @RequestParam(defaultValue = "5000") int limit,
+            WebRequest request) {
+        return ifTableModified(request, () -> cityService.getCitiesWithin(x, y, radius, limit));
+    }
+    
+    @GetMapping("/geo/nearest")
+    public ResponseEntity<List<CityLocation>> getNearestCities(
+            @RequestParam double x, @RequestParam double y,
+            @RequestParam(defaultValue = "10") int k,
+            WebRequest request) {
+        return ifTableModified(request, () -> cityService.getNearestCities(x, y, k));
+    }
+    
+    @GetMapping("/facets")
+    public ResponseEntity<CityFacets> getFacets(
+            @RequestParam(required = false) List<Climate> climate,
+            @RequestParam(required = false) List<String> government,
+            @RequestParam(required = false) List<StandardOfLiving> standardOfLiving,
+            @RequestParam(defaultValue = "all") String match) {
+        return ResponseEntity.ok(cityService.getFacets(facetFilter(climate, government, standardOfLiving, match)));
+    }
+    
+    @GetMapping("/facets/cities")
+    public ResponseEntity<Page<City>> getCitiesByFacets(
+            @RequestParam(required = false) List<Climate> climate,
+            @RequestParam(required = false) List<String> government,
+            @RequestParam(required = false) List<StandardOfLiving> standardOfLiving,
+            @RequestParam(defaultValue = "all") String match,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size,
+            WebRequest request) {
+        CityFacetIndex.Filter filter = facetFilter(climate, government, standardOfLiving, match);
+        return ifTableModified(request, () -> cityService.getCitiesByFacets(filter, PageRequest.of(page, size)));
+    }
+    
     @GetMapping("/climate/{climate}")
     public ResponseEntity<List<City>> getCitiesByClimate(@PathVariable Climate climate) {
         List<City> cities = cityService.findCitiesByClimate(climate);
@@ -92,12 +287,58 @@ public class CityController {
         return ResponseEntity.ok().build();
     }
     
+    // deletes every city with the climate in chunks; with Accept: application/x-ndjson
+    // a progress line is streamed after each chunk
+    @DeleteMapping(value = "/bulk", params = "climate")
+    public ResponseEntity<?> deleteCitiesByClimate(@RequestParam Climate climate,
+                                                   @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        if (accept != null && MediaType.parseMediaTypes(accept).contains(MediaType.APPLICATION_NDJSON)) {
+            StreamingResponseBody body = out -> cityBulkDeleteService.deleteByClimate(climate, out);
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+        }
+        return ResponseEntity.ok(cityBulkDeleteService.deleteByClimate(climate));
+    }
+    
     @GetMapping("/average-sea-level")
     public ResponseEntity<Double> getAverageMetersAboveSeaLevel() {
         Double average = cityService.getAverageMetersAboveSeaLevel();
         return ResponseEntity.ok(average);
     }
     
+    @GetMapping("/changes")
+    public ResponseEntity<CityChangeBatch> getChangesSince(
+            @RequestParam long since,
+            @RequestParam(required = false) String epoch) {
+        return ResponseEntity.ok(cityChangeFeed.since(epoch, since));
+    }
+    
+    @GetMapping("/summary")
+    public ResponseEntity<CitySummary> getSummary() {
+        return ResponseEntity.ok(cityService.getSummary());
+    }
+    
+    @GetMapping("/cache/stats")
+    public ResponseEntity<CacheStats> getCacheStats() {
+        return ResponseEntity.ok(cityService.getCacheStats());
+    }
+    
+    @GetMapping("/min-population")
+    public ResponseEntity<City> getCityWithMinPopulation() {
+        return cityService.getCityWithMinPopulation()
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+    }
+    
+    @GetMapping("/population/smallest")
+    public ResponseEntity<List<City>> getSmallestCities(@RequestParam(defaultValue = "10") int k) {
+        return ResponseEntity.ok(cityService.getSmallestCities(k));
+    }
+    
+    @GetMapping("/population/largest")
+    public ResponseEntity<List<City>> getLargestCities(@RequestParam(defaultValue = "10") int k) {
+        return ResponseEntity.ok(cityService.getLargestCities(k));
+    }
+    
     @PostMapping("/relocate-population")
     public ResponseEntity<Void> relocatePopulation(
             @RequestParam Integer fromCityId, 
@@ -106,10 +347,121 @@ public class CityController {
         return ResponseEntity.ok().build();
     }
     
+    @PostMapping("/relocate-population/batch")
+    public ResponseEntity<Map<Integer, Integer>> relocatePopulations(
+            @RequestBody @Valid List<RelocationRequest> moves) {
+        return ResponseEntity.ok(cityService.relocatePopulations(moves));
+    }
+    
     @PostMapping("/relocate-population-to-min")
     public ResponseEntity<Void> relocatePopulationToMinPopulationCity(
             @RequestParam Integer fromCityId) {
         cityService.relocatePopulationToMinPopulationCity(fromCityId);
         return ResponseEntity.ok().build();
     }
+
+    // The snapshot is read before the query: a write committing meanwhile leaves the tag
+    // behind the data, which costs at most one extra full response later, never a stale 304.
+    // The tag counts primary commits, so the body is read there too; a lagging replica would
+    // pair an old body with a new tag.
+    private <T> ResponseEntity<T> ifTableModified(WebRequest request, Supplier<T> body) {
+        CityTableVersion.Snapshot version = cityTableVersion.current();
+        String eTag = withRepresentation(version.getETag(), request);
+        if (request.checkNotModified(eTag, version.getLastModified())) {
+            return notModified();
+        }
+        return revalidated(eTag, version.getLastModified()).body(ReadReplicaRoutingDataSource.onPrimary(body));
+    }
+    
+    private static ResponseEntity.BodyBuilder revalidated(String eTag, long lastModified) {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .varyBy(HttpHeaders.ACCEPT)
+                .eTag(eTag)
+                .lastModified(lastModified);
+    }
+    
+    // checkNotModified has already set the status, ETag and Last-Modified
+    private static <T> ResponseEntity<T> notModified() {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).varyBy(HttpHeaders.ACCEPT).build();
+    }
+    
+    /**
+     * JSON, CBOR and Smile bodies of the same state are different representations, so the
+     * binary ones get their own tag. Mirrors the converter order: JSON wins for wildcards.
+     */
+    private static String withRepresentation(String eTag, WebRequest request) {
+        String suffix = representationSuffix(request.getHeader(HttpHeaders.ACCEPT));
+        if (suffix.isEmpty()) {
+            return eTag;
+        }
+        return eTag.substring(0, eTag.length() - 1) + suffix + "\"";
+    }
+    
+    private static String representationSuffix(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return "";
+        }
+        List<MediaType> accepted;
+        try {
+            accepted = new ArrayList<>(MediaType.parseMediaTypes(accept));
+        } catch (InvalidMediaTypeException e) {
+            return "";
+        }
+        MimeTypeUtils.sortBySpecificity(accepted);
+        for (MediaType type : accepted) {
+            if (type.getQualityValue() == 0) {
+                continue;
+            }
+            if (type.includes(MediaType.APPLICATION_JSON)) {
+                return "";
+            }
+            if (type.includes(MediaType.APPLICATION_CBOR)) {
+                return CBOR_SUFFIX;
+            }
+            if (type.includes(SMILE)) {
+                return SMILE_SUFFIX;
+            }
+        }
+        return "";
+    }
+    
+    private static CityFacetIndex.Filter facetFilter(List<Climate> climate, List<String> government,
+                                                     List<StandardOfLiving> standardOfLiving, String match) {
+        boolean any = match.equalsIgnoreCase("any");
+        if (!any && !match.equalsIgnoreCase("all")) {
+            throw new BadRequestException("match must be 'all' or 'any'");
+        }
+        return new CityFacetIndex.Filter(climate, government, standardOfLiving, any);
+    }
+    
+    private static String eTag(City city, WebRequest request) {
+        return withRepresentation("\"" + city.getVersion() + "\"", request);
+    }
+    
+    // null means "any version": no header or If-Match: *
+    private static Long parseIfMatch(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        if (ifMatch.indexOf(',') >= 0) {
+            throw new BadRequestException("If-Match must contain a single entity tag");
+        }
+        String tag = ifMatch.trim();
+        if (tag.startsWith("W/")) {
+            throw new PreconditionFailedException("Weak entity tags cannot be used with If-Match");
+        }
+        if (tag.length() >= 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+            tag = tag.substring(1, tag.length() - 1);
+        }
+        // every representation of a city carries the same version
+        if (tag.endsWith(CBOR_SUFFIX) || tag.endsWith(SMILE_SUFFIX)) {
+            tag = tag.substring(0, tag.lastIndexOf('+'));
+        }
+        try {
+            return Long.parseLong(tag);
+        } catch (NumberFormatException e) {
+            throw new PreconditionFailedException("Entity tag " + ifMatch + " does not match any city version");
+        }
+    }
 }
@@ -1,10 +1,16 @@
 package is.lab1.controller;
 
+import is.lab1.dto.CursorSlice;
 import is.lab1.model.City;
 import is.lab1.model.Climate;
 import is.lab1.model.Government;
 import is.lab1.model.StandardOfLiving;
+import is.lab1.service.CityFields;
+import is.lab1.service.CityFragmentCache;
 import is.lab1.service.CityService;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -13,17 +19,31 @@ import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.context.WebContext;
+import org.thymeleaf.web.servlet.JakartaServletWebApplication;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @Controller
 public class WebController {
     
     private final CityService cityService;
+    private final CityFragmentCache cityFragmentCache;
+    private final ITemplateEngine templateEngine;
+    private final JakartaServletWebApplication webApplication;
 
     @Autowired
-    public WebController(CityService cityService) {
+    public WebController(CityService cityService, CityFragmentCache cityFragmentCache,
+                         ITemplateEngine templateEngine, ServletContext servletContext) {
         this.cityService = cityService;
+        this.cityFragmentCache = cityFragmentCache;
+        this.templateEngine = templateEngine;
+        this.webApplication = JakartaServletWebApplication.buildApplication(servletContext);
     }
 
     private static final String CLIMATES = "climates";
@@ -31,7 +51,7 @@ public class WebController {
     private static final String STANDARD_OF_LIVINGS = "standard_of_living";
     
     @GetMapping("/")
-    public String index(Model model,
+    public String index(Model model, HttpServletRequest request, HttpServletResponse response,
                        @RequestParam(defaultValue = "0") int page,
                        @RequestParam(defaultValue = "10") int size,
                        @RequestParam(defaultValue = "id") String sortBy,
@@ -42,9 +62,10 @@ public class WebController {
             Sort.by(sortBy).descending() : Sort.by(sortBy).ascending();
         
         Pageable pageable = PageRequest.of(page, size, sort);
-        Page<City> cities = cityService.getCitiesByName(name, pageable);
+        Page<Map<String, Object>> cities = cityService.getCityFields(name, CityFields.LIST, pageable);
         
         model.addAttribute("cities", cities);
+        model.addAttribute("cityRows", renderRows(cities.getContent(), request, response));
         model.addAttribute("currentPage", page);
         model.addAttribute("totalPages", cities.getTotalPages());
         model.addAttribute("sortBy", sortBy);
@@ -57,13 +78,44 @@ public class WebController {
         return "index";
     }
     
+    @GetMapping(value = "/", params = "after")
+    public String indexAfter(Model model, HttpServletRequest request, HttpServletResponse response,
+                             @RequestParam String after,
+                             @RequestParam(defaultValue = "10") int size,
+                             @RequestParam(defaultValue = "id") String sortBy,
+                             @RequestParam(defaultValue = "asc") String sortDir,
+                             @RequestParam(required = false) String name) {
+        
+        CursorSlice<City> cities = cityService.getCitiesAfter(name, sortBy, sortDir, after, size);
+        
+        model.addAttribute("cities", cities);
+        model.addAttribute("cityRows", renderRows(cities.getContent(), request, response));
+        model.addAttribute("currentPage", 0);
+        model.addAttribute("totalPages", 0);
+        model.addAttribute("nextCursor", cities.getNextCursor());
+        model.addAttribute("after", after);
+        model.addAttribute("cursorMode", true);
+        model.addAttribute("size", size);
+        model.addAttribute("sortBy", sortBy);
+        model.addAttribute("sortDir", sortDir);
+        model.addAttribute("name", name);
+        model.addAttribute(CLIMATES, Climate.values());
+        model.addAttribute(GOVERNMENTS, Government.values());
+        model.addAttribute(STANDARD_OF_LIVINGS, StandardOfLiving.values());
+        
+        return "index";
+    }
+    
     private static final String REDIRECT_HOME = "redirect:/";
     
     @GetMapping("/city/{id}")
-    public String viewCity(@PathVariable Integer id, Model model) {
+    public String viewCity(@PathVariable Integer id, Model model,
+                           HttpServletRequest request, HttpServletResponse response) {
         Optional<City> city = cityService.getCityById(id);
         if (city.isPresent()) {
             model.addAttribute("city", city.get());
+            model.addAttribute("detailHtml", renderFragment("detail", city.get(), id, city.get().getVersion(),
+                    request, response));
             return "city-detail";
         }
         return REDIRECT_HOME;
@@ -104,8 +156,7 @@ public class WebController {
     @PostMapping("/city/update/{id}")
     public String updateCity(@PathVariable Integer id, @ModelAttribute City city) {
         try {
-            city.setId(id);
-            cityService.saveCity(city);
+            cityService.updateCity(id, city, city.getVersion());
             return REDIRECT_HOME + "city/" + id;
         } catch (Exception e) {
             return REDIRECT_HOME + "city/edit/" + id + "?error=" + e.getMessage();
@@ -127,4 +178,28 @@ public class WebController {
         model.addAttribute(CLIMATES, Climate.values());
         return "special-operations";
     }
+
+    private List<String> renderRows(List<?> cities, HttpServletRequest request, HttpServletResponse response) {
+        List<String> rows = new ArrayList<>(cities.size());
+        for (Object city : cities) {
+            if (city instanceof City entity) {
+                rows.add(renderFragment("row", city, entity.getId(), entity.getVersion(), request, response));
+            } else {
+                Map<?, ?> fields = (Map<?, ?>) city;
+                Number version = (Number) fields.get("version");
+                rows.add(renderFragment("row", city, (Integer) fields.get("id"),
+                        version == null ? null : version.longValue(), request, response));
+            }
+        }
+        return rows;
+    }
+    
+    private String renderFragment(String fragment, Object city, Integer id, Long version,
+                                  HttpServletRequest request, HttpServletResponse response) {
+        return cityFragmentCache.get(fragment, id, version, () -> {
+            WebContext context = new WebContext(webApplication.buildExchange(request, response),
+                    request.getLocale(), Map.of("city", city));
+            return templateEngine.process("fragments/city", Set.of(fragment), context);
+        });
+    }
 }
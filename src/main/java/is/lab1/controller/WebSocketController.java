@@ -1,6 +1,9 @@
 package is.lab1.controller;
 
-import is.lab1.model.City;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import is.lab1.dto.CityChangeBatch;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
@@ -9,23 +12,26 @@ import org.springframework.stereotype.Controller;
 public class WebSocketController {
     
     private final SimpMessagingTemplate messagingTemplate;
+    private final Timer sendTimer;
+    private final Counter framesSent;
+    private final Counter changesSent;
 
     @Autowired
-    public WebSocketController(SimpMessagingTemplate messagingTemplate) {
+    public WebSocketController(SimpMessagingTemplate messagingTemplate, MeterRegistry meterRegistry) {
         this.messagingTemplate = messagingTemplate;
+        this.sendTimer = Timer.builder("city.ws.send")
+                .description("Time to hand a change frame to the broker channel")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.framesSent = Counter.builder("city.ws.frames").register(meterRegistry);
+        this.changesSent = Counter.builder("city.ws.changes").register(meterRegistry);
     }
 
     private static final String TOPIC_CITIES = "/topic/cities";
 
-    public void notifyCityCreated(City city) {
-        messagingTemplate.convertAndSend(TOPIC_CITIES, "CREATED:" + city.getId());
-    }
-    
-    public void notifyCityUpdated(City city) {
-        messagingTemplate.convertAndSend(TOPIC_CITIES, "UPDATED:" + city.getId());
-    }
-    
-    public void notifyCityDeleted(Integer cityId) {
-        messagingTemplate.convertAndSend(TOPIC_CITIES, "DELETED:" + cityId);
+    public void sendChanges(CityChangeBatch batch) {
+        sendTimer.record(() -> messagingTemplate.convertAndSend(TOPIC_CITIES, batch));
+        framesSent.increment();
+        changesSent.increment(batch.getChanges().size());
     }
 }
@@ -0,0 +1,39 @@
+package is.lab1.dto;
+
+import is.lab1.model.Climate;
+
+public class BulkDeleteResult {
+    private final Climate climate;
+    private long deleted;
+    private int chunks;
+    private boolean done;
+
+    public BulkDeleteResult(Climate climate) {
+        this.climate = climate;
+    }
+
+    public void addChunk(int count) {
+        deleted += count;
+        chunks++;
+    }
+
+    public void markDone() {
+        done = true;
+    }
+
+    public Climate getClimate() {
+        return climate;
+    }
+
+    public long getDeleted() {
+        return deleted;
+    }
+
+    public int getChunks() {
+        return chunks;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+}
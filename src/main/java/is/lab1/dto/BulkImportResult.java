@@ -0,0 +1,86 @@
+package is.lab1.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a bulk import. Only the first maxErrors record errors are kept;
+ * the rest are counted in omittedErrors.
+ */
+public class BulkImportResult {
+    private final int maxErrors;
+    private long received;
+    private long imported;
+    private long failed;
+    private long omittedErrors;
+    private String stopReason;
+    private final List<RecordError> errors = new ArrayList<>();
+
+    public BulkImportResult(int maxErrors) {
+        this.maxErrors = maxErrors;
+    }
+
+    public void addReceived(int count) {
+        received += count;
+    }
+
+    public void addImported(int count) {
+        imported += count;
+    }
+
+    public void addError(long index, List<String> messages) {
+        failed++;
+        if (errors.size() < maxErrors) {
+            errors.add(new RecordError(index, messages));
+        } else {
+            omittedErrors++;
+        }
+    }
+
+    // the body could not be read past this point; nothing after it was received
+    public void stop(String reason) {
+        stopReason = reason;
+    }
+
+    public long getReceived() {
+        return received;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getOmittedErrors() {
+        return omittedErrors;
+    }
+
+    public String getStopReason() {
+        return stopReason;
+    }
+
+    public List<RecordError> getErrors() {
+        return errors;
+    }
+
+    public static class RecordError {
+        private final long index;
+        private final List<String> messages;
+
+        public RecordError(long index, List<String> messages) {
+            this.index = index;
+            this.messages = messages;
+        }
+
+        public long getIndex() {
+            return index;
+        }
+
+        public List<String> getMessages() {
+            return messages;
+        }
+    }
+}
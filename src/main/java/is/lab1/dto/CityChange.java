@@ -0,0 +1,135 @@
+package is.lab1.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import is.lab1.model.City;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CityChange {
+
+    public enum Type { CREATED, UPDATED, DELETED }
+
+    // a deletion outranks every write the row ever had, and ids are never reused
+    private static final long DELETED_VERSION = Long.MAX_VALUE;
+
+    private final Type type;
+    private final Integer id;
+    private final Map<String, Object> fields;
+    private final long version;
+    private final Long sequence;
+
+    private CityChange(Type type, Integer id, Map<String, Object> fields, long version) {
+        this(type, id, fields, version, null);
+    }
+
+    private CityChange(Type type, Integer id, Map<String, Object> fields, long version, Long sequence) {
+        this.type = type;
+        this.id = id;
+        this.fields = fields;
+        this.version = version;
+        this.sequence = sequence;
+    }
+
+    /** Expects the committed city: its version is only assigned when the insert is flushed. */
+    public static CityChange created(City city) {
+        return new CityChange(Type.CREATED, city.getId(), fieldsOf(city), versionOf(city));
+    }
+
+    public static CityChange updated(City city) {
+        return new CityChange(Type.UPDATED, city.getId(), fieldsOf(city), versionOf(city));
+    }
+
+    public static CityChange population(Integer id, int population, long version) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("population", population);
+        fields.put("version", version);
+        return new CityChange(Type.UPDATED, id, fields, version);
+    }
+
+    public static CityChange deleted(Integer id) {
+        return new CityChange(Type.DELETED, id, null, DELETED_VERSION);
+    }
+
+    /**
+     * Folds a later change to the same city into this one. After-commit hooks of concurrent
+     * transactions run in either order, so a change with an older row version is ignored.
+     * Returns null when the two cancel out (created and deleted within one window).
+     */
+    public CityChange merge(CityChange later) {
+        if (later.version < version) {
+            return this;
+        }
+        if (later.type == Type.DELETED) {
+            return type == Type.CREATED ? null : later;
+        }
+        if (later.type == Type.CREATED) {
+            return later;
+        }
+        Map<String, Object> merged = new LinkedHashMap<>(fields);
+        merged.putAll(later.fields);
+        return new CityChange(type, id, merged, later.version);
+    }
+
+    public CityChange withSequence(long sequence) {
+        return new CityChange(type, id, fields, version, sequence);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public Map<String, Object> getFields() {
+        return fields;
+    }
+
+    // already part of fields; deletions carry no version of their own
+    @JsonIgnore
+    public long getVersion() {
+        return version;
+    }
+
+    public Long getSequence() {
+        return sequence;
+    }
+
+    private static long versionOf(City city) {
+        return city.getVersion() == null ? 0 : city.getVersion();
+    }
+
+    private static Map<String, Object> fieldsOf(City city) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("name", city.getName());
+        if (city.getCoordinates() != null) {
+            Map<String, Object> coordinates = new LinkedHashMap<>();
+            coordinates.put("x", city.getCoordinates().getX());
+            coordinates.put("y", city.getCoordinates().getY());
+            fields.put("coordinates", coordinates);
+        }
+        fields.put("creationDate", city.getCreationDate());
+        fields.put("area", city.getArea());
+        fields.put("population", city.getPopulation());
+        fields.put("establishmentDate", city.getEstablishmentDate());
+        fields.put("capital", city.isCapital());
+        fields.put("metersAboveSeaLevel", city.getMetersAboveSeaLevel());
+        fields.put("climate", city.getClimate());
+        fields.put("government", city.getGovernment());
+        fields.put("standardOfLiving", city.getStandardOfLiving());
+        if (city.getGovernor() != null) {
+            Map<String, Object> governor = new LinkedHashMap<>();
+            governor.put("name", city.getGovernor().getName());
+            governor.put("height", city.getGovernor().getHeight());
+            fields.put("governor", governor);
+        } else {
+            fields.put("governor", null);
+        }
+        fields.put("version", city.getVersion());
+        return fields;
+    }
+}
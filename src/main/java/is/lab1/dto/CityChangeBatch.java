@@ -0,0 +1,33 @@
+package is.lab1.dto;
+
+import java.util.List;
+
+public class CityChangeBatch {
+    private final String epoch;
+    private final long lastSequence;
+    private final List<CityChange> changes;
+    private final boolean resync;
+
+    public CityChangeBatch(String epoch, long lastSequence, List<CityChange> changes, boolean resync) {
+        this.epoch = epoch;
+        this.lastSequence = lastSequence;
+        this.changes = changes;
+        this.resync = resync;
+    }
+
+    public String getEpoch() {
+        return epoch;
+    }
+
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    public List<CityChange> getChanges() {
+        return changes;
+    }
+
+    public boolean isResync() {
+        return resync;
+    }
+}
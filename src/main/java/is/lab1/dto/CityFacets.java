@@ -0,0 +1,38 @@
+package is.lab1.dto;
+
+import java.util.Map;
+
+/**
+ * Matching city count plus per-value counts for each enum column.
+ * A missing government is counted under "null".
+ */
+public class CityFacets {
+    private final long total;
+    private final Map<String, Long> climate;
+    private final Map<String, Long> government;
+    private final Map<String, Long> standardOfLiving;
+
+    public CityFacets(long total, Map<String, Long> climate, Map<String, Long> government,
+                      Map<String, Long> standardOfLiving) {
+        this.total = total;
+        this.climate = climate;
+        this.government = government;
+        this.standardOfLiving = standardOfLiving;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public Map<String, Long> getClimate() {
+        return climate;
+    }
+
+    public Map<String, Long> getGovernment() {
+        return government;
+    }
+
+    public Map<String, Long> getStandardOfLiving() {
+        return standardOfLiving;
+    }
+}
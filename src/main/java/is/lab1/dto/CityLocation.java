@@ -0,0 +1,46 @@
+package is.lab1.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CityLocation {
+    private final Integer id;
+    private final String name;
+    private final double x;
+    private final float y;
+    private final int population;
+    private final Double distance;
+
+    public CityLocation(Integer id, String name, double x, float y, int population, Double distance) {
+        this.id = id;
+        this.name = name;
+        this.x = x;
+        this.y = y;
+        this.population = population;
+        this.distance = distance;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public float getY() {
+        return y;
+    }
+
+    public int getPopulation() {
+        return population;
+    }
+
+    public Double getDistance() {
+        return distance;
+    }
+}
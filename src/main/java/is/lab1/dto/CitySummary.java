@@ -0,0 +1,57 @@
+package is.lab1.dto;
+
+import is.lab1.model.Climate;
+
+import java.time.ZonedDateTime;
+import java.util.Map;
+
+public class CitySummary {
+    private final long count;
+    private final long totalPopulation;
+    private final double totalArea;
+    private final Double averageMetersAboveSeaLevel;
+    private final Map<Climate, Long> climateCounts;
+    private final ZonedDateTime reconciledAt;
+
+    public CitySummary(long count, long totalPopulation, double totalArea, Double averageMetersAboveSeaLevel,
+                       Map<Climate, Long> climateCounts, ZonedDateTime reconciledAt) {
+        this.count = count;
+        this.totalPopulation = totalPopulation;
+        this.totalArea = totalArea;
+        this.averageMetersAboveSeaLevel = averageMetersAboveSeaLevel;
+        this.climateCounts = climateCounts;
+        this.reconciledAt = reconciledAt;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getTotalPopulation() {
+        return totalPopulation;
+    }
+
+    public Double getAveragePopulation() {
+        return count == 0 ? null : (double) totalPopulation / count;
+    }
+
+    public double getTotalArea() {
+        return totalArea;
+    }
+
+    public Double getAverageArea() {
+        return count == 0 ? null : totalArea / count;
+    }
+
+    public Double getAverageMetersAboveSeaLevel() {
+        return averageMetersAboveSeaLevel;
+    }
+
+    public Map<Climate, Long> getClimateCounts() {
+        return climateCounts;
+    }
+
+    public ZonedDateTime getReconciledAt() {
+        return reconciledAt;
+    }
+}
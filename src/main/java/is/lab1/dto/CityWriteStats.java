@@ -0,0 +1,50 @@
+package is.lab1.dto;
+
+public class CityWriteStats {
+    private final int queued;
+    private final int capacity;
+    private final long accepted;
+    private final long rejected;
+    private final long written;
+    private final long failed;
+    private final long batches;
+
+    public CityWriteStats(int queued, int capacity, long accepted, long rejected,
+                          long written, long failed, long batches) {
+        this.queued = queued;
+        this.capacity = capacity;
+        this.accepted = accepted;
+        this.rejected = rejected;
+        this.written = written;
+        this.failed = failed;
+        this.batches = batches;
+    }
+
+    public int getQueued() {
+        return queued;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getAccepted() {
+        return accepted;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public long getWritten() {
+        return written;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getBatches() {
+        return batches;
+    }
+}
@@ -0,0 +1,31 @@
+package is.lab1.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CityWriteStatus {
+
+    public enum State { QUEUED, WRITTEN, FAILED }
+
+    private final Integer id;
+    private final State state;
+    private final String error;
+
+    public CityWriteStatus(Integer id, State state, String error) {
+        this.id = id;
+        this.state = state;
+        this.error = error;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
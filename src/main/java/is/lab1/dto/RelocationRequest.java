@@ -0,0 +1,35 @@
+package is.lab1.dto;
+
+import jakarta.validation.constraints.NotNull;
+
+public class RelocationRequest {
+    @NotNull(message = "fromCityId cannot be null")
+    private Integer fromCityId;
+
+    @NotNull(message = "toCityId cannot be null")
+    private Integer toCityId;
+
+    public RelocationRequest() {
+    }
+
+    public RelocationRequest(Integer fromCityId, Integer toCityId) {
+        this.fromCityId = fromCityId;
+        this.toCityId = toCityId;
+    }
+
+    public Integer getFromCityId() {
+        return fromCityId;
+    }
+
+    public void setFromCityId(Integer fromCityId) {
+        this.fromCityId = fromCityId;
+    }
+
+    public Integer getToCityId() {
+        return toCityId;
+    }
+
+    public void setToCityId(Integer toCityId) {
+        this.toCityId = toCityId;
+    }
+}
@@ -7,12 +7,17 @@ import java.time.ZonedDateTime;
 import java.util.Date;
 
 @Entity
-@Table(name = "cities")
+@Table(name = "cities", indexes = {
+        @Index(name = "idx_cities_name_id", columnList = "name, id"),
+        @Index(name = "idx_cities_population_id", columnList = "population, id"),
+        @Index(name = "idx_cities_area_id", columnList = "area, id"),
+        @Index(name = "idx_cities_creation_date_id", columnList = "creation_date, id")
+})
 public class City {
     
     @Id
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "cities_id_seq")
-    @SequenceGenerator(name = "cities_id_seq", sequenceName = "cities_id_seq", allocationSize = 1)
+    @SequenceGenerator(name = "cities_id_seq", sequenceName = "cities_id_seq", allocationSize = 50)
     @Column(name = "id")
     private Integer id;
     
@@ -67,6 +72,10 @@ public class City {
     @JoinColumn(name = "governor_id", nullable = true)
     private Human governor;
     
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
+    
     // Constructors
     public City() {
         this.creationDate = ZonedDateTime.now();
@@ -189,6 +198,14 @@ public class City {
         this.governor = governor;
     }
     
+    public Long getVersion() {
+        return version;
+    }
+    
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+    
     @Override
     public String toString() {
         return "City{" +
@@ -205,6 +222,7 @@ public class City {
                 ", government=" + government +
                 ", standardOfLiving=" + standardOfLiving +
                 ", governor=" + governor +
+                ", version=" + version +
                 '}';
     }
 }
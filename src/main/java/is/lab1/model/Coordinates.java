@@ -9,7 +9,8 @@ import jakarta.validation.constraints.DecimalMin;
 public class Coordinates {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "coordinates_id_seq")
+    @SequenceGenerator(name = "coordinates_id_seq", sequenceName = "coordinates_id_seq", allocationSize = 50)
     private Long id;
     
     @NotNull(message = "X coordinate cannot be null")
@@ -8,7 +8,8 @@ import jakarta.validation.constraints.DecimalMin;
 public class Human {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "humans_id_seq")
+    @SequenceGenerator(name = "humans_id_seq", sequenceName = "humans_id_seq", allocationSize = 50)
     private Long id;
     
     @Column(name = "name")
@@ -5,7 +5,6 @@ import is.lab1.model.Climate;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -14,47 +13,76 @@ import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface CityRepository extends JpaRepository<City, Integer> {
+public interface CityRepository extends JpaRepository<City, Integer>, CityRepositoryCustom {
     
     @Query("SELECT c FROM City c WHERE c.name LIKE :substring")
     List<City> findByNameContaining(@Param("substring") String substring);
     
     List<City> findByClimate(Climate climate);
     
-    @Query("SELECT c FROM City c ORDER BY c.population ASC")
-    List<City> findCitiesOrderedByPopulation();
+    // served by idx_cities_population_id, reads only the first k index entries
+    Optional<City> findFirstByOrderByPopulationAscIdAsc();
+    
+    List<City> findByOrderByPopulationAscIdAsc(Pageable pageable);
+    
+    List<City> findByOrderByPopulationDescIdDesc(Pageable pageable);
     
     default Optional<City> findCityWithMinPopulation() {
-        List<City> cities = findCitiesOrderedByPopulation();
-        return cities.isEmpty() ? Optional.empty() : Optional.of(cities.getFirst());
+        return findFirstByOrderByPopulationAscIdAsc();
+    }
+    
+    /**
+     * LIKE pattern matching the given text anywhere, with %, _ and the backslash escape
+     * character taken literally.
+     */
+    static String containsPattern(String substring) {
+        return "%" + substring.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
     }
     
+    @Query(value = "SELECT id FROM cities ORDER BY population ASC, id ASC LIMIT 1", nativeQuery = true)
+    Integer findMinPopulationIdFn();
+    
     @Query("SELECT AVG(c.metersAboveSeaLevel) FROM City c WHERE c.metersAboveSeaLevel IS NOT NULL")
     Double getAverageMetersAboveSeaLevel();
 
-    @Modifying
-    @Query(value = "DELETE FROM cities WHERE id IN (SELECT id FROM cities WHERE climate = ?1)", nativeQuery = true)
-    Integer deleteAnyByClimateFn(String climate);
-
     @Query(value = "SELECT AVG(meters_above_sea_level) FROM cities WHERE meters_above_sea_level IS NOT NULL", nativeQuery = true)
     Double avgMaslFn();
 
-    @Query(value = "SELECT * FROM cities WHERE name LIKE ?1", nativeQuery = true)
-    List<City> findByNameLikeFn(String substr);
+    @Query(value = "SELECT climate, COUNT(*), SUM(population), SUM(area), COUNT(meters_above_sea_level), SUM(meters_above_sea_level) FROM cities GROUP BY climate", nativeQuery = true)
+    List<Object[]> aggregateByClimateFn();
+
+    @Query(value = "SELECT climate, 1, population, area, CASE WHEN meters_above_sea_level IS NULL THEN 0 ELSE 1 END, meters_above_sea_level FROM cities WHERE id = ?1", nativeQuery = true)
+    List<Object[]> aggregateByIdFn(Integer id);
+
+    @Query(value = "SELECT * FROM cities WHERE lower(name) LIKE lower(?1) ORDER BY id LIMIT ?2", nativeQuery = true)
+    List<City> findByNameLikeFn(String substr, int limit);
+
+    // Spatial queries; point(x_coordinate, y_coordinate) matches the GiST index from V5
+    @Query(value = "SELECT c.id, c.name, co.x_coordinate, co.y_coordinate, c.population FROM coordinates co " +
+            "JOIN cities c ON c.coordinates_id = co.id " +
+            "WHERE point(co.x_coordinate, co.y_coordinate) <@ box(point(?1, ?2), point(?3, ?4)) " +
+            "ORDER BY c.id LIMIT ?5", nativeQuery = true)
+    List<Object[]> findLocationsInBoxFn(double minX, double minY, double maxX, double maxY, int limit);
+
+    @Query(value = "SELECT c.id, c.name, co.x_coordinate, co.y_coordinate, c.population, " +
+            "point(co.x_coordinate, co.y_coordinate) <-> point(?1, ?2) AS distance FROM coordinates co " +
+            "JOIN cities c ON c.coordinates_id = co.id " +
+            "WHERE point(co.x_coordinate, co.y_coordinate) <@ circle(point(?1, ?2), ?3) " +
+            "ORDER BY distance LIMIT ?4", nativeQuery = true)
+    List<Object[]> findLocationsWithinFn(double x, double y, double radius, int limit);
+
+    @Query(value = "SELECT c.id, c.name, co.x_coordinate, co.y_coordinate, c.population, " +
+            "point(co.x_coordinate, co.y_coordinate) <-> point(?1, ?2) AS distance FROM coordinates co " +
+            "JOIN cities c ON c.coordinates_id = co.id " +
+            "ORDER BY point(co.x_coordinate, co.y_coordinate) <-> point(?1, ?2) LIMIT ?3", nativeQuery = true)
+    List<Object[]> findNearestLocationsFn(double x, double y, int k);
 
-    @Modifying
-    @Query(value = "UPDATE cities SET population = population + (SELECT population FROM cities WHERE id = ?1) WHERE id = ?2", nativeQuery = true)
-    void relocateFn(Integer fromId, Integer toId);
-    
-    @Modifying
-    @Query(value = "UPDATE cities SET population = 0 WHERE id = ?1", nativeQuery = true)
-    void clearPopulation(Integer fromId);
 
-    @Modifying
-    @Query(value = "UPDATE cities SET population = population + (SELECT population FROM cities WHERE id = ?1) WHERE id = (SELECT id FROM cities ORDER BY population ASC LIMIT 1)", nativeQuery = true)
-    Integer relocateToMinFn(Integer fromId);
     
-    Page<City> findByNameContainingIgnoreCase(String name, Pageable pageable);
+    // lower(name) so the GIN trigram index from V3 applies; derived IgnoreCase queries use upper()
+    @Query(value = "SELECT c FROM City c WHERE LOWER(c.name) LIKE :pattern ESCAPE '\\'",
+            countQuery = "SELECT COUNT(c) FROM City c WHERE LOWER(c.name) LIKE :pattern ESCAPE '\\'")
+    Page<City> findByLowerNameLike(@Param("pattern") String pattern, Pageable pageable);
     
     Page<City> findAll(Pageable pageable);
 }
@@ -0,0 +1,59 @@
+package is.lab1.repository;
+
+import is.lab1.model.City;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+public interface CityRepositoryCustom {
+
+    /**
+     * Keyset page: cities strictly after (afterKey, afterId) in (sortBy, id) order.
+     * Pass a null afterId for the first page.
+     */
+    List<City> findSliceAfter(String name, String sortBy, boolean descending,
+                              Object afterKey, Integer afterId, int limit);
+
+    /**
+     * Page of cities reduced to the given fields, fetched with a single select.
+     * "coordinates" is joined in, "governor" left-joined; rows come back as maps in field order.
+     */
+    Page<Map<String, Object>> findFields(String name, List<String> fields, Pageable pageable);
+
+    /**
+     * Locks the given rows with SELECT ... FOR UPDATE in ascending id order, so that
+     * concurrent callers always acquire row locks in the same order, and returns id -> population.
+     */
+    Map<Integer, Integer> lockPopulations(Collection<Integer> ids);
+
+    /**
+     * Sets populations for all given ids with a single UPDATE ... FROM (VALUES ...)
+     * and returns id -> the row version it bumped to.
+     */
+    Map<Integer, Long> updatePopulations(Map<Integer, Integer> populations);
+
+    /**
+     * Overwrites the city row, its coordinates and governor in one statement, provided the
+     * stored version equals expectedVersion (any version when null). On success the id, new
+     * version, creation date and child ids are set on the given city and the previous row is
+     * returned in the same shape as {@link CityRepository#aggregateByIdFn}; otherwise the list is empty.
+     */
+    List<Object[]> updateIfVersion(Integer id, Long expectedVersion, City city);
+
+    /**
+     * Deletes up to limit cities with the given climate and an id above afterId (Integer.MIN_VALUE
+     * to start from the lowest), lowest ids first, together with their coordinates and governors, in one statement.
+     * Returns the aggregate row of every deleted city, keyed by id, in the shape of
+     * {@link CityRepository#aggregateByIdFn}.
+     */
+    Map<Integer, Object[]> deleteByClimate(String climate, int afterId, int limit);
+
+    /**
+     * Takes the next city id from EclipseLink's preallocated sequence block, so a city can be
+     * acknowledged before it is inserted. Ids are never handed out twice, even if the insert never happens.
+     */
+    Integer reserveId();
+}
@@ -0,0 +1,342 @@
+package is.lab1.repository;
+
+import is.lab1.model.City;
+import is.lab1.model.Coordinates;
+import is.lab1.model.Human;
+import jakarta.persistence.Cache;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import jakarta.persistence.TypedQuery;
+import org.eclipse.persistence.jpa.JpaEntityManagerFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.support.PageableExecutionUtils;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+public class CityRepositoryImpl implements CityRepositoryCustom {
+
+    // ?1 id, ?2 expected version, ?3..?11 city columns, ?12/?13 coordinates, ?14 has governor, ?15/?16 governor.
+    // PostgreSQL types a null parameter as varchar, so every nullable non-string placeholder is cast at each use.
+    private static final String UPDATE_IF_VERSION_SQL =
+            "WITH old AS (" +
+            "  SELECT id, coordinates_id, governor_id, climate, population, area, meters_above_sea_level FROM cities" +
+            "  WHERE id = ?1 AND (CAST(?2 AS BIGINT) IS NULL OR version = CAST(?2 AS BIGINT))), " +
+            "governor_updated AS (" +
+            "  UPDATE humans SET name = CAST(?15 AS VARCHAR), height = CAST(?16 AS DOUBLE PRECISION) FROM old" +
+            "  WHERE CAST(?14 AS BOOLEAN) AND humans.id = old.governor_id), " +
+            "governor_created AS (" +
+            "  INSERT INTO humans (id, name, height)" +
+            "  SELECT nextval('humans_id_seq'), CAST(?15 AS VARCHAR), CAST(?16 AS DOUBLE PRECISION) FROM old" +
+            "  WHERE CAST(?14 AS BOOLEAN) AND old.governor_id IS NULL RETURNING id), " +
+            "coordinates_updated AS (" +
+            "  UPDATE coordinates SET x_coordinate = CAST(?12 AS DOUBLE PRECISION), y_coordinate = CAST(?13 AS REAL) FROM old" +
+            "  WHERE coordinates.id = old.coordinates_id), " +
+            "updated AS (" +
+            "  UPDATE cities SET name = ?3, area = ?4, population = ?5, establishment_date = CAST(?6 AS DATE), capital = ?7," +
+            "  meters_above_sea_level = CAST(?8 AS REAL), climate = ?9, government = ?10, standard_of_living = ?11," +
+            "  governor_id = CASE WHEN CAST(?14 AS BOOLEAN)" +
+            "    THEN COALESCE((SELECT id FROM governor_created), old.governor_id) END," +
+            "  version = cities.version + 1" +
+            "  FROM old WHERE cities.id = old.id AND (CAST(?2 AS BIGINT) IS NULL OR cities.version = CAST(?2 AS BIGINT))" +
+            "  RETURNING cities.version, cities.creation_date, cities.coordinates_id, cities.governor_id) " +
+            "SELECT u.version, u.creation_date, u.coordinates_id, u.governor_id," +
+            " o.climate, o.population, o.area, o.meters_above_sea_level " +
+            "FROM updated u, old o";
+
+    // ?1 climate, ?2 exclusive lower id bound, ?3 limit; rows are locked in id order like lockPopulations,
+    // and the foreign keys are only checked once the whole statement has run
+    private static final String DELETE_BY_CLIMATE_SQL =
+            "WITH doomed AS (" +
+            "  SELECT id FROM cities WHERE climate = ?1 AND id > ?2" +
+            "  ORDER BY id LIMIT ?3 FOR UPDATE), " +
+            "deleted AS (" +
+            "  DELETE FROM cities USING doomed WHERE cities.id = doomed.id" +
+            "  RETURNING cities.id, cities.coordinates_id, cities.governor_id, cities.climate," +
+            "  cities.population, cities.area, cities.meters_above_sea_level), " +
+            "coordinates_deleted AS (" +
+            "  DELETE FROM coordinates WHERE id IN (SELECT coordinates_id FROM deleted)), " +
+            "governors_deleted AS (" +
+            "  DELETE FROM humans WHERE id IN (SELECT governor_id FROM deleted)) " +
+            "SELECT id, coordinates_id, governor_id, climate, population, area, meters_above_sea_level " +
+            "FROM deleted ORDER BY id";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<City> findSliceAfter(String name, String sortBy, boolean descending,
+                                     Object afterKey, Integer afterId, int limit) {
+        String cmp = descending ? "<" : ">";
+        String dir = descending ? "DESC" : "ASC";
+        String key = "c." + sortBy;
+
+        List<String> conditions = new ArrayList<>();
+        boolean byName = name != null && !name.trim().isEmpty();
+        if (byName) {
+            conditions.add("LOWER(c.name) LIKE :name ESCAPE '\\'");
+        }
+        if (afterId != null) {
+            if ("id".equals(sortBy)) {
+                conditions.add("c.id " + cmp + " :afterId");
+            } else {
+                // the leading range bound is implied by the OR, but only it can seek into idx_cities_<key>_id
+                conditions.add(key + " " + cmp + "= :afterKey AND (" + key + " " + cmp + " :afterKey OR c.id " + cmp + " :afterId)");
+            }
+        }
+
+        StringBuilder jpql = new StringBuilder("SELECT c FROM City c");
+        if (!conditions.isEmpty()) {
+            jpql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+        jpql.append(" ORDER BY ");
+        if (!"id".equals(sortBy)) {
+            jpql.append(key).append(' ').append(dir).append(", ");
+        }
+        jpql.append("c.id ").append(dir);
+
+        TypedQuery<City> query = entityManager.createQuery(jpql.toString(), City.class);
+        if (byName) {
+            query.setParameter("name", CityRepository.containsPattern(name.trim().toLowerCase()));
+        }
+        if (afterId != null) {
+            query.setParameter("afterId", afterId);
+            if (!"id".equals(sortBy)) {
+                query.setParameter("afterKey", afterKey);
+            }
+        }
+        query.setMaxResults(limit);
+        return query.getResultList();
+    }
+
+    @Override
+    public Page<Map<String, Object>> findFields(String name, List<String> fields, Pageable pageable) {
+        List<String> select = new ArrayList<>();
+        for (String field : fields) {
+            switch (field) {
+                case "coordinates" -> {
+                    select.add("co.x");
+                    select.add("co.y");
+                }
+                case "governor" -> {
+                    select.add("g.id");
+                    select.add("g.name");
+                    select.add("g.height");
+                }
+                default -> select.add("c." + field);
+            }
+        }
+
+        StringBuilder jpql = new StringBuilder("SELECT ").append(String.join(", ", select)).append(" FROM City c");
+        if (fields.contains("coordinates")) {
+            jpql.append(" JOIN c.coordinates co");
+        }
+        if (fields.contains("governor")) {
+            jpql.append(" LEFT JOIN c.governor g");
+        }
+        boolean byName = name != null && !name.trim().isEmpty();
+        String where = byName ? " WHERE LOWER(c.name) LIKE :name ESCAPE '\\'" : "";
+        jpql.append(where);
+
+        List<String> order = new ArrayList<>();
+        boolean byId = false;
+        for (Sort.Order o : pageable.getSort()) {
+            order.add("c." + o.getProperty() + (o.isDescending() ? " DESC" : " ASC"));
+            byId |= o.getProperty().equals("id");
+        }
+        if (!byId) {
+            order.add("c.id ASC");
+        }
+        jpql.append(" ORDER BY ").append(String.join(", ", order));
+
+        Query query = entityManager.createQuery(jpql.toString());
+        if (byName) {
+            query.setParameter("name", CityRepository.containsPattern(name.trim().toLowerCase()));
+        }
+        query.setFirstResult((int) pageable.getOffset());
+        query.setMaxResults(pageable.getPageSize());
+
+        List<Map<String, Object>> content = new ArrayList<>();
+        for (Object result : query.getResultList()) {
+            Object[] row = select.size() == 1 ? new Object[]{result} : (Object[]) result;
+            Map<String, Object> item = new LinkedHashMap<>();
+            int i = 0;
+            for (String field : fields) {
+                switch (field) {
+                    case "coordinates" -> {
+                        Map<String, Object> coordinates = new LinkedHashMap<>();
+                        coordinates.put("x", row[i++]);
+                        coordinates.put("y", row[i++]);
+                        item.put(field, coordinates);
+                    }
+                    case "governor" -> {
+                        Object governorId = row[i++];
+                        Map<String, Object> governor = null;
+                        if (governorId != null) {
+                            governor = new LinkedHashMap<>();
+                            governor.put("name", row[i]);
+                            governor.put("height", row[i + 1]);
+                        }
+                        i += 2;
+                        item.put(field, governor);
+                    }
+                    default -> item.put(field, row[i++]);
+                }
+            }
+            content.add(item);
+        }
+
+        return PageableExecutionUtils.getPage(content, pageable, () -> {
+            TypedQuery<Long> count = entityManager.createQuery("SELECT COUNT(c) FROM City c" + where, Long.class);
+            if (byName) {
+                count.setParameter("name", CityRepository.containsPattern(name.trim().toLowerCase()));
+            }
+            return count.getSingleResult();
+        });
+    }
+
+    @Override
+    public Map<Integer, Integer> lockPopulations(Collection<Integer> ids) {
+        List<Integer> ordered = new ArrayList<>(new TreeSet<>(ids));
+        StringBuilder sql = new StringBuilder("SELECT id, population FROM cities WHERE id IN (");
+        for (int i = 1; i <= ordered.size(); i++) {
+            sql.append(i == 1 ? "?" : ", ?").append(i);
+        }
+        sql.append(") ORDER BY id FOR UPDATE");
+
+        Query query = entityManager.createNativeQuery(sql.toString());
+        for (int i = 0; i < ordered.size(); i++) {
+            query.setParameter(i + 1, ordered.get(i));
+        }
+        Map<Integer, Integer> populations = new LinkedHashMap<>();
+        for (Object row : query.getResultList()) {
+            Object[] columns = (Object[]) row;
+            populations.put(((Number) columns[0]).intValue(), ((Number) columns[1]).intValue());
+        }
+        return populations;
+    }
+
+    @Override
+    public Map<Integer, Long> updatePopulations(Map<Integer, Integer> populations) {
+        if (populations.isEmpty()) {
+            return Map.of();
+        }
+        StringBuilder sql = new StringBuilder("UPDATE cities SET population = v.population, version = version + 1 FROM (VALUES ");
+        int param = 1;
+        for (int i = 0; i < populations.size(); i++) {
+            sql.append(i == 0 ? "" : ", ").append("(?").append(param++).append(", ?").append(param++).append(')');
+        }
+        sql.append(") AS v(id, population) WHERE cities.id = v.id RETURNING cities.id, cities.version");
+
+        Query query = entityManager.createNativeQuery(sql.toString());
+        param = 1;
+        for (Map.Entry<Integer, Integer> entry : populations.entrySet()) {
+            query.setParameter(param++, entry.getKey());
+            query.setParameter(param++, entry.getValue());
+        }
+        Map<Integer, Long> versions = new LinkedHashMap<>();
+        for (Object result : query.getResultList()) {
+            Object[] row = (Object[]) result;
+            versions.put(((Number) row[0]).intValue(), ((Number) row[1]).longValue());
+        }
+        // native SQL bypasses EclipseLink's shared cache, so drop the stale copies
+        for (Integer id : populations.keySet()) {
+            entityManager.getEntityManagerFactory().getCache().evict(City.class, id);
+        }
+        return versions;
+    }
+
+    @Override
+    public List<Object[]> updateIfVersion(Integer id, Long expectedVersion, City city) {
+        Coordinates coordinates = city.getCoordinates();
+        Human governor = city.getGovernor();
+        Query query = entityManager.createNativeQuery(UPDATE_IF_VERSION_SQL)
+                .setParameter(1, id)
+                .setParameter(2, expectedVersion)
+                .setParameter(3, city.getName())
+                .setParameter(4, city.getArea())
+                .setParameter(5, city.getPopulation())
+                .setParameter(6, city.getEstablishmentDate() == null ? null : new Date(city.getEstablishmentDate().getTime()))
+                .setParameter(7, city.isCapital())
+                .setParameter(8, city.getMetersAboveSeaLevel())
+                .setParameter(9, city.getClimate() == null ? null : city.getClimate().name())
+                .setParameter(10, city.getGovernment() == null ? null : city.getGovernment().name())
+                .setParameter(11, city.getStandardOfLiving() == null ? null : city.getStandardOfLiving().name())
+                .setParameter(12, coordinates == null ? null : coordinates.getX())
+                .setParameter(13, coordinates == null ? null : coordinates.getY())
+                .setParameter(14, governor != null)
+                .setParameter(15, governor == null ? null : governor.getName())
+                .setParameter(16, governor == null ? null : governor.getHeight());
+        List<?> rows = query.getResultList();
+        if (rows.isEmpty()) {
+            return List.of();
+        }
+
+        Object[] row = (Object[]) rows.get(0);
+        Long coordinatesId = row[2] == null ? null : ((Number) row[2]).longValue();
+        Long governorId = row[3] == null ? null : ((Number) row[3]).longValue();
+        city.setId(id);
+        city.setVersion(((Number) row[0]).longValue());
+        if (row[1] instanceof Timestamp timestamp) {
+            city.setCreationDate(timestamp.toInstant().atZone(ZoneId.systemDefault()));
+        }
+        if (coordinates != null) {
+            coordinates.setId(coordinatesId);
+        }
+        if (governor != null) {
+            governor.setId(governorId);
+        }
+
+        // native SQL bypasses EclipseLink's shared cache, so drop the stale copies
+        Cache cache = entityManager.getEntityManagerFactory().getCache();
+        cache.evict(City.class, id);
+        if (coordinatesId != null) {
+            cache.evict(Coordinates.class, coordinatesId);
+        }
+        if (governorId != null) {
+            cache.evict(Human.class, governorId);
+        }
+        Object masl = row[7];
+        return List.<Object[]>of(new Object[]{row[4], 1L, row[5], row[6], masl == null ? 0L : 1L, masl});
+    }
+
+    @Override
+    public Map<Integer, Object[]> deleteByClimate(String climate, int afterId, int limit) {
+        Query query = entityManager.createNativeQuery(DELETE_BY_CLIMATE_SQL)
+                .setParameter(1, climate)
+                .setParameter(2, afterId)
+                .setParameter(3, limit);
+        Map<Integer, Object[]> deleted = new LinkedHashMap<>();
+        Cache cache = entityManager.getEntityManagerFactory().getCache();
+        for (Object result : query.getResultList()) {
+            Object[] row = (Object[]) result;
+            Integer id = ((Number) row[0]).intValue();
+            Object masl = row[6];
+            deleted.put(id, new Object[]{row[3], 1L, row[4], row[5], masl == null ? 0L : 1L, masl});
+            // native SQL bypasses EclipseLink's shared cache, so drop the stale copies
+            cache.evict(City.class, id);
+            cache.evict(Coordinates.class, ((Number) row[1]).longValue());
+            if (row[2] != null) {
+                cache.evict(Human.class, ((Number) row[2]).longValue());
+            }
+        }
+        return deleted;
+    }
+
+    @Override
+    public Integer reserveId() {
+        Number id = entityManager.getEntityManagerFactory().unwrap(JpaEntityManagerFactory.class)
+                .getServerSession().getNextSequenceNumberValue(City.class);
+        return id.intValue();
+    }
+}
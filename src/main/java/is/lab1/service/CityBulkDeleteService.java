@@ -0,0 +1,134 @@
+package is.lab1.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import is.lab1.dto.BulkDeleteResult;
+import is.lab1.model.Climate;
+import is.lab1.repository.CityRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Deletes every city matching a filter in chunks, one short transaction per chunk, so row
+ * locks are only held for one chunk at a time. Each chunk is a single statement that also
+ * removes the cities' coordinates and governors. Chunks walk the ids upwards, so cities
+ * created with a lower id while the delete runs may survive it.
+ * Subscribers get one resync event once the last chunk has committed.
+ */
+@Service
+public class CityBulkDeleteService {
+
+    private final CityRepository cityRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final CityChangeFeed cityChangeFeed;
+    private final CityCache cityCache;
+    private final CityFragmentCache cityFragmentCache;
+    private final CityStatistics cityStatistics;
+    private final CityFacetIndex cityFacetIndex;
+    private final CityTableVersion cityTableVersion;
+    private final int chunkSize;
+
+    @Autowired
+    public CityBulkDeleteService(CityRepository cityRepository, PlatformTransactionManager transactionManager,
+                                 ObjectMapper objectMapper, CityChangeFeed cityChangeFeed, CityCache cityCache,
+                                 CityFragmentCache cityFragmentCache, CityStatistics cityStatistics,
+                                 CityFacetIndex cityFacetIndex, CityTableVersion cityTableVersion,
+                                 @Value("${city.delete.chunk-size:1000}") int chunkSize) {
+        this.cityRepository = cityRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.cityChangeFeed = cityChangeFeed;
+        this.cityCache = cityCache;
+        this.cityFragmentCache = cityFragmentCache;
+        this.cityStatistics = cityStatistics;
+        this.cityFacetIndex = cityFacetIndex;
+        this.cityTableVersion = cityTableVersion;
+        this.chunkSize = chunkSize;
+    }
+
+    public BulkDeleteResult deleteByClimate(Climate climate) {
+        return deleteByClimate(climate, result -> { });
+    }
+
+    /**
+     * Writes the running result as one NDJSON line after every chunk; the last line has done=true.
+     */
+    public void deleteByClimate(Climate climate, OutputStream out) throws IOException {
+        try {
+            deleteByClimate(climate, result -> {
+                try {
+                    objectMapper.writeValue(out, result);
+                    out.write('\n');
+                    out.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Deletes chunk after chunk until one comes back short, calling progress after each
+     * committed chunk. A failing chunk stops the run; earlier chunks stay deleted.
+     */
+    public BulkDeleteResult deleteByClimate(Climate climate, Consumer<BulkDeleteResult> progress) {
+        BulkDeleteResult result = new BulkDeleteResult(climate);
+        int afterId = Integer.MIN_VALUE;
+        try {
+            while (true) {
+                int cursor = afterId;
+                List<Integer> ids = transactionTemplate.execute(status -> deleteChunk(climate, cursor));
+                if (ids.isEmpty()) {
+                    break;
+                }
+                result.addChunk(ids.size());
+                afterId = ids.get(ids.size() - 1);
+                if (ids.size() < chunkSize) {
+                    break;
+                }
+                progress.accept(result);
+            }
+        } finally {
+            if (result.getDeleted() > 0) {
+                cityChangeFeed.publishResync();
+            }
+        }
+        result.markDone();
+        progress.accept(result);
+        return result;
+    }
+
+    private List<Integer> deleteChunk(Climate climate, int afterId) {
+        Map<Integer, Object[]> deleted = cityRepository.deleteByClimate(climate.name(), afterId, chunkSize);
+        List<Integer> ids = new ArrayList<>(deleted.keySet());
+        if (ids.isEmpty()) {
+            return ids;
+        }
+        List<Object[]> before = new ArrayList<>(deleted.values());
+        // same two evictions as CityService.invalidate
+        ids.forEach(cityCache::evict);
+        TransactionHooks.afterCommit(() -> {
+            cityStatistics.removeRows(before);
+            ids.forEach(cityFacetIndex::remove);
+            cityTableVersion.bump();
+        });
+        TransactionHooks.afterCompletion(() -> ids.forEach(id -> {
+            cityCache.evict(id);
+            cityFragmentCache.evict(id);
+        }));
+        return ids;
+    }
+}
@@ -0,0 +1,102 @@
+package is.lab1.service;
+
+import is.lab1.dto.CacheStats;
+import is.lab1.model.City;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Bounded LRU read-through cache for single cities, keyed by id.
+ * Entries are evicted by CityService on every write that may touch them.
+ * A load runs outside the lock, so it may return a row that a writer replaced and evicted
+ * while the load was in flight; such a result is handed to the caller but not cached.
+ */
+@Component
+public class CityCache {
+
+    private final int maxSize;
+    private final Map<Integer, City> entries;
+    // ids with a load in flight, and how many evictions each has seen since
+    private final Map<Integer, Load> loads = new HashMap<>();
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public CityCache(@Value("${city.cache.max-size:1000}") int maxSize) {
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, City> eldest) {
+                if (size() > CityCache.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public Optional<City> get(Integer id, Function<Integer, Optional<City>> loader) {
+        if (maxSize <= 0) {
+            return loader.apply(id);
+        }
+        Load load;
+        long evictionsSeen;
+        synchronized (this) {
+            City cached = entries.get(id);
+            if (cached != null) {
+                hits++;
+                return Optional.of(cached);
+            }
+            misses++;
+            load = loads.computeIfAbsent(id, key -> new Load());
+            load.readers++;
+            evictionsSeen = load.evictions;
+        }
+        Optional<City> loaded = Optional.empty();
+        try {
+            loaded = loader.apply(id);
+        } finally {
+            synchronized (this) {
+                if (loaded.isPresent() && load.evictions == evictionsSeen) {
+                    entries.put(id, loaded.get());
+                }
+                if (--load.readers == 0) {
+                    loads.remove(id);
+                }
+            }
+        }
+        return loaded;
+    }
+
+    public synchronized void evict(Integer id) {
+        if (id != null) {
+            entries.remove(id);
+            Load load = loads.get(id);
+            if (load != null) {
+                load.evictions++;
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        loads.values().forEach(load -> load.evictions++);
+    }
+
+    public synchronized CacheStats getStats() {
+        return new CacheStats(hits, misses, evictions, entries.size(), maxSize);
+    }
+
+    private static final class Load {
+        int readers;
+        long evictions;
+    }
+}
@@ -0,0 +1,160 @@
+package is.lab1.service;
+
+import is.lab1.controller.WebSocketController;
+import is.lab1.dto.CityChange;
+import is.lab1.dto.CityChangeBatch;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Collects city changes, releases them only after the surrounding transaction
+ * commits (bumping CityTableVersion at that point), and sends everything gathered within one window as a single frame.
+ * Changes to the same city inside a window are merged into one delta. After-commit hooks of
+ * concurrent transactions may run in either order, so the newest row version enqueued for
+ * recently changed cities is remembered, and a change older than that is dropped.
+ * <p>
+ * Every sent change gets a sequence number, and the most recent ones are kept
+ * in a ring buffer so a reconnecting client can ask for what it missed.
+ * The epoch changes on every restart, so sequences from an older run always force a resync.
+ */
+@Component
+public class CityChangeFeed {
+
+    private final WebSocketController webSocketController;
+    private final CityTableVersion cityTableVersion;
+    private final int replayCapacity;
+    private final String epoch = Long.toHexString(System.currentTimeMillis());
+
+    private Map<Integer, CityChange> pending = new LinkedHashMap<>();
+    private final Map<Integer, Long> newestVersions;
+    private boolean resyncPending;
+
+    private final ArrayDeque<CityChange> history = new ArrayDeque<>();
+    private long sequence;
+    private long lastResyncSequence;
+
+    @Autowired
+    public CityChangeFeed(WebSocketController webSocketController, CityTableVersion cityTableVersion,
+                          @Value("${city.feed.replay-capacity:1000}") int replayCapacity) {
+        this.webSocketController = webSocketController;
+        this.cityTableVersion = cityTableVersion;
+        this.replayCapacity = replayCapacity;
+        this.newestVersions = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Long> eldest) {
+                return size() > Math.max(replayCapacity, 1);
+            }
+        };
+    }
+
+    public void publish(CityChange change) {
+        TransactionHooks.afterCommit(() -> enqueue(change));
+    }
+
+    /** For changes whose payload is only complete after commit, like the version of a new row. */
+    public void publish(Supplier<CityChange> change) {
+        TransactionHooks.afterCommit(() -> enqueue(change.get()));
+    }
+
+    /**
+     * For bulk operations whose affected rows are not known individually:
+     * clients should drop their view and refetch.
+     */
+    public void publishResync() {
+        TransactionHooks.afterCommit(this::enqueueResync);
+    }
+
+    @Scheduled(fixedDelayString = "${city.feed.window-ms:100}")
+    public void flush() {
+        List<CityChange> changes;
+        boolean resync;
+        synchronized (this) {
+            if (pending.isEmpty() && !resyncPending) {
+                return;
+            }
+            changes = new ArrayList<>(pending.values());
+            resync = resyncPending;
+            pending = new LinkedHashMap<>();
+            resyncPending = false;
+        }
+        CityChangeBatch batch;
+        synchronized (history) {
+            if (resync) {
+                lastResyncSequence = ++sequence;
+                history.clear();
+                batch = new CityChangeBatch(epoch, sequence, List.of(), true);
+            } else {
+                List<CityChange> sequenced = new ArrayList<>(changes.size());
+                for (CityChange change : changes) {
+                    CityChange numbered = change.withSequence(++sequence);
+                    sequenced.add(numbered);
+                    history.addLast(numbered);
+                    if (history.size() > replayCapacity) {
+                        history.removeFirst();
+                    }
+                }
+                batch = new CityChangeBatch(epoch, sequence, sequenced, false);
+            }
+        }
+        webSocketController.sendChanges(batch);
+    }
+
+    /**
+     * Changes sent after the given sequence, or a resync batch when they are no longer
+     * all in the buffer, a resync happened in between, or the epoch is missing or does not match.
+     */
+    public CityChangeBatch since(String clientEpoch, long since) {
+        synchronized (history) {
+            // a client without an epoch cannot prove its sequence is from this run
+            boolean sameRun = epoch.equals(clientEpoch);
+            if (!sameRun || since > sequence || since < lastResyncSequence) {
+                return new CityChangeBatch(epoch, sequence, List.of(), true);
+            }
+            long oldestReplayable = history.isEmpty() ? sequence + 1 : history.peekFirst().getSequence();
+            if (since + 1 < oldestReplayable) {
+                return new CityChangeBatch(epoch, sequence, List.of(), true);
+            }
+            List<CityChange> missed = new ArrayList<>();
+            for (CityChange change : history) {
+                if (change.getSequence() > since) {
+                    missed.add(change);
+                }
+            }
+            return new CityChangeBatch(epoch, sequence, missed, false);
+        }
+    }
+
+    private synchronized void enqueue(CityChange change) {
+        cityTableVersion.bump();
+        Long newest = newestVersions.get(change.getId());
+        if (newest != null && change.getVersion() < newest) {
+            return;
+        }
+        newestVersions.put(change.getId(), change.getVersion());
+        if (resyncPending) {
+            return;
+        }
+        CityChange previous = pending.get(change.getId());
+        CityChange merged = previous == null ? change : previous.merge(change);
+        if (merged == null) {
+            pending.remove(change.getId());
+        } else {
+            pending.put(change.getId(), merged);
+        }
+    }
+
+    private synchronized void enqueueResync() {
+        cityTableVersion.bump();
+        pending.clear();
+        resyncPending = true;
+    }
+}
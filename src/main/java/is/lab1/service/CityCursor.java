@@ -0,0 +1,100 @@
+package is.lab1.service;
+
+import is.lab1.exception.BadRequestException;
+import is.lab1.model.City;
+
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.Base64;
+import java.util.Set;
+
+/**
+ * Opaque keyset cursor: base64url of "sortBy:dir:id:key".
+ * Only columns backed by a (column, id) index may be used as sort keys.
+ */
+public final class CityCursor {
+
+    public static final Set<String> SORTABLE = Set.of("id", "name", "population", "area", "creationDate");
+
+    private final String sortBy;
+    private final boolean descending;
+    private final Integer id;
+    private final Object key;
+
+    private CityCursor(String sortBy, boolean descending, Integer id, Object key) {
+        this.sortBy = sortBy;
+        this.descending = descending;
+        this.id = id;
+        this.key = key;
+    }
+
+    public static void checkSortable(String sortBy) {
+        if (!SORTABLE.contains(sortBy)) {
+            throw new BadRequestException("Cursor pagination is not supported for sortBy=" + sortBy
+                    + ", use one of " + SORTABLE);
+        }
+    }
+
+    public static CityCursor of(City last, String sortBy, boolean descending) {
+        return new CityCursor(sortBy, descending, last.getId(), keyOf(last, sortBy));
+    }
+
+    public static CityCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":", 4);
+            if (parts.length != 4) {
+                throw new IllegalArgumentException("malformed cursor");
+            }
+            String sortBy = parts[0];
+            checkSortable(sortBy);
+            return new CityCursor(sortBy, "desc".equals(parts[1]), Integer.valueOf(parts[2]),
+                    parseKey(sortBy, parts[3]));
+        } catch (BadRequestException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new BadRequestException("Invalid cursor: " + token);
+        }
+    }
+
+    public String encode() {
+        String raw = sortBy + ":" + (descending ? "desc" : "asc") + ":" + id + ":" + (key == null ? "" : key);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public String getSortBy() {
+        return sortBy;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public Object getKey() {
+        return key;
+    }
+
+    private static Object keyOf(City city, String sortBy) {
+        return switch (sortBy) {
+            case "name" -> city.getName();
+            case "population" -> city.getPopulation();
+            case "area" -> city.getArea();
+            case "creationDate" -> city.getCreationDate();
+            default -> null;
+        };
+    }
+
+    private static Object parseKey(String sortBy, String value) {
+        return switch (sortBy) {
+            case "name" -> value;
+            case "population" -> Integer.valueOf(value);
+            case "area" -> Float.valueOf(value);
+            case "creationDate" -> ZonedDateTime.parse(value);
+            default -> null;
+        };
+    }
+}
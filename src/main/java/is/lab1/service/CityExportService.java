@@ -0,0 +1,204 @@
+package is.lab1.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.ZoneId;
+
+/**
+ * Streams every city straight from a server-side JDBC cursor to the response.
+ * Rows are never materialized as entities, so memory use does not depend on table size.
+ */
+@Service
+public class CityExportService {
+
+    public enum Format { NDJSON, CSV }
+
+    private static final String EXPORT_SQL =
+            "SELECT c.id, c.name, co.x_coordinate, co.y_coordinate, c.creation_date, c.area, c.population, " +
+            "c.establishment_date, c.capital, c.meters_above_sea_level, c.climate, c.government, " +
+            "c.standard_of_living, h.name AS governor_name, h.height AS governor_height " +
+            "FROM cities c " +
+            "JOIN coordinates co ON co.id = c.coordinates_id " +
+            "LEFT JOIN humans h ON h.id = c.governor_id " +
+            "ORDER BY c.id";
+
+    private static final String CSV_HEADER =
+            "id,name,x,y,creationDate,area,population,establishmentDate,capital," +
+            "metersAboveSeaLevel,climate,government,standardOfLiving,governorName,governorHeight";
+
+    private static final int FLUSH_EVERY = 500;
+
+    private final DataSource dataSource;
+    private final ObjectMapper objectMapper;
+    private final int fetchSize;
+
+    @Autowired
+    public CityExportService(DataSource dataSource, ObjectMapper objectMapper,
+                             @Value("${city.export.fetch-size:1000}") int fetchSize) {
+        this.dataSource = dataSource;
+        this.objectMapper = objectMapper;
+        this.fetchSize = fetchSize;
+    }
+
+    public void export(Format format, OutputStream out) throws IOException {
+        // PostgreSQL only honours the fetch size (i.e. opens a cursor) outside autocommit
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            connection.setReadOnly(true);
+            try (PreparedStatement statement = connection.prepareStatement(EXPORT_SQL,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                statement.setFetchSize(fetchSize);
+                try (ResultSet rs = statement.executeQuery()) {
+                    if (format == Format.CSV) {
+                        writeCsv(rs, out);
+                    } else {
+                        writeNdjson(rs, out);
+                    }
+                }
+            } finally {
+                connection.rollback();
+                connection.setReadOnly(false);
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("City export failed", e);
+        }
+    }
+
+    private void writeNdjson(ResultSet rs, OutputStream out) throws SQLException, IOException {
+        JsonGenerator json = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+        json.setRootValueSeparator(null);
+        int rows = 0;
+        while (rs.next()) {
+            json.writeStartObject();
+            json.writeNumberField("id", rs.getInt("id"));
+            json.writeStringField("name", rs.getString("name"));
+            json.writeObjectFieldStart("coordinates");
+            json.writeNumberField("x", rs.getDouble("x_coordinate"));
+            json.writeNumberField("y", rs.getFloat("y_coordinate"));
+            json.writeEndObject();
+            json.writeStringField("creationDate", formatTimestamp(rs.getTimestamp("creation_date")));
+            json.writeNumberField("area", rs.getFloat("area"));
+            json.writeNumberField("population", rs.getInt("population"));
+            writeNullableString(json, "establishmentDate", rs.getString("establishment_date"));
+            json.writeBooleanField("capital", rs.getBoolean("capital"));
+            float masl = rs.getFloat("meters_above_sea_level");
+            if (rs.wasNull()) {
+                json.writeNullField("metersAboveSeaLevel");
+            } else {
+                json.writeNumberField("metersAboveSeaLevel", masl);
+            }
+            json.writeStringField("climate", rs.getString("climate"));
+            writeNullableString(json, "government", rs.getString("government"));
+            json.writeStringField("standardOfLiving", rs.getString("standard_of_living"));
+            double height = rs.getDouble("governor_height");
+            boolean noHeight = rs.wasNull();
+            String governorName = rs.getString("governor_name");
+            if (governorName == null && noHeight) {
+                json.writeNullField("governor");
+            } else {
+                json.writeObjectFieldStart("governor");
+                writeNullableString(json, "name", governorName);
+                if (noHeight) {
+                    json.writeNullField("height");
+                } else {
+                    json.writeNumberField("height", height);
+                }
+                json.writeEndObject();
+            }
+            json.writeEndObject();
+            json.writeRaw('\n');
+            if (++rows % FLUSH_EVERY == 0) {
+                json.flush();
+            }
+        }
+        json.flush();
+    }
+
+    private void writeCsv(ResultSet rs, OutputStream out) throws SQLException, IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write(CSV_HEADER);
+        writer.write('\n');
+        int rows = 0;
+        while (rs.next()) {
+            writer.write(rs.getString("id"));
+            writer.write(',');
+            writer.write(csv(rs.getString("name")));
+            writer.write(',');
+            writer.write(rs.getString("x_coordinate"));
+            writer.write(',');
+            writer.write(rs.getString("y_coordinate"));
+            writer.write(',');
+            writer.write(formatTimestamp(rs.getTimestamp("creation_date")));
+            writer.write(',');
+            writer.write(rs.getString("area"));
+            writer.write(',');
+            writer.write(rs.getString("population"));
+            writer.write(',');
+            writer.write(nullToEmpty(rs.getString("establishment_date")));
+            writer.write(',');
+            writer.write(Boolean.toString(rs.getBoolean("capital")));
+            writer.write(',');
+            writer.write(nullToEmpty(rs.getString("meters_above_sea_level")));
+            writer.write(',');
+            writer.write(rs.getString("climate"));
+            writer.write(',');
+            writer.write(nullToEmpty(rs.getString("government")));
+            writer.write(',');
+            writer.write(rs.getString("standard_of_living"));
+            writer.write(',');
+            writer.write(csv(rs.getString("governor_name")));
+            writer.write(',');
+            writer.write(nullToEmpty(rs.getString("governor_height")));
+            writer.write('\n');
+            if (++rows % FLUSH_EVERY == 0) {
+                writer.flush();
+            }
+        }
+        writer.flush();
+    }
+
+    private static void writeNullableString(JsonGenerator json, String field, String value) throws IOException {
+        if (value == null) {
+            json.writeNullField(field);
+        } else {
+            json.writeStringField(field, value);
+        }
+    }
+
+    private static String formatTimestamp(Timestamp timestamp) {
+        return timestamp == null ? "" : timestamp.toInstant().atZone(ZoneId.systemDefault()).toOffsetDateTime().toString();
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
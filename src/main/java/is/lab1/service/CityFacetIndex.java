@@ -0,0 +1,342 @@
+package is.lab1.service;
+
+import is.lab1.dto.CityFacets;
+import is.lab1.exception.BadRequestException;
+import is.lab1.model.City;
+import is.lab1.model.Climate;
+import is.lab1.model.Government;
+import is.lab1.model.StandardOfLiving;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * One bitmap per value of climate, government and standard of living, indexed by city id.
+ * Facet counts and filters are computed with word-wide AND/OR over the bitmaps and never hit the database.
+ * <p>
+ * CityService applies every committed write with {@link #put} / {@link #remove}. Both carry the full
+ * row state, so they are idempotent. After-commit hooks of concurrent transactions may run in any
+ * order, so a put older than the row version already applied is ignored, and so is any put after
+ * a remove. Writes that land while a rebuild is reading the table are journaled and replayed on
+ * top of the fresh bitmaps, which start from the versions read.
+ */
+@Component
+public class CityFacetIndex {
+
+    private static final String REBUILD_SQL = "SELECT id, climate, government, standard_of_living, version FROM cities";
+    private static final int FETCH_SIZE = 10000;
+
+    private static final Climate[] CLIMATES = Climate.values();
+    private static final Government[] GOVERNMENTS = Government.values();
+    private static final StandardOfLiving[] STANDARDS = StandardOfLiving.values();
+    // the extra slot in government holds cities without one
+    private static final int NO_GOVERNMENT = GOVERNMENTS.length;
+
+    private final DataSource dataSource;
+    private final Object rebuildLock = new Object();
+
+    private volatile Bitmaps bitmaps;
+    private List<Consumer<Bitmaps>> journal;
+
+    @Autowired
+    public CityFacetIndex(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public void put(City city) {
+        if (city.getId() == null) {
+            return;
+        }
+        int id = city.getId();
+        long version = city.getVersion() == null ? 0 : city.getVersion();
+        int climate = city.getClimate() == null ? -1 : city.getClimate().ordinal();
+        int government = city.getGovernment() == null ? NO_GOVERNMENT : city.getGovernment().ordinal();
+        int standard = city.getStandardOfLiving() == null ? -1 : city.getStandardOfLiving().ordinal();
+        apply(b -> b.put(id, version, climate, government, standard));
+    }
+
+    public void remove(Integer id) {
+        if (id != null) {
+            apply(b -> b.remove(id));
+        }
+    }
+
+    public CityFacets facets(Filter filter) {
+        ensureLoaded();
+        synchronized (this) {
+            BitSet matching = bitmaps.matching(filter, -1);
+            // disjunctive counts: each column is counted against the other columns' filters only
+            BitSet byClimate = filter.any ? matching : bitmaps.matching(filter, 0);
+            BitSet byGovernment = filter.any ? matching : bitmaps.matching(filter, 1);
+            BitSet byStandard = filter.any ? matching : bitmaps.matching(filter, 2);
+
+            Map<String, Long> climate = new LinkedHashMap<>();
+            for (Climate value : CLIMATES) {
+                climate.put(value.name(), intersection(byClimate, bitmaps.climate[value.ordinal()]));
+            }
+            Map<String, Long> government = new LinkedHashMap<>();
+            for (Government value : GOVERNMENTS) {
+                government.put(value.name(), intersection(byGovernment, bitmaps.government[value.ordinal()]));
+            }
+            government.put("null", intersection(byGovernment, bitmaps.government[NO_GOVERNMENT]));
+            Map<String, Long> standard = new LinkedHashMap<>();
+            for (StandardOfLiving value : STANDARDS) {
+                standard.put(value.name(), intersection(byStandard, bitmaps.standard[value.ordinal()]));
+            }
+            return new CityFacets(matching.cardinality(), climate, government, standard);
+        }
+    }
+
+    /**
+     * Page of ids matching the filter, in ascending id order.
+     */
+    public Page<Integer> matchingIds(Filter filter, Pageable pageable) {
+        ensureLoaded();
+        synchronized (this) {
+            BitSet matching = bitmaps.matching(filter, -1);
+            List<Integer> ids = new ArrayList<>(pageable.getPageSize());
+            long skipped = 0;
+            for (int id = matching.nextSetBit(0); id >= 0 && ids.size() < pageable.getPageSize();
+                 id = matching.nextSetBit(id + 1)) {
+                if (skipped++ >= pageable.getOffset()) {
+                    ids.add(id);
+                }
+            }
+            return new PageImpl<>(ids, pageable, matching.cardinality());
+        }
+    }
+
+    /**
+     * Reloads all bitmaps from the table. Only a safety net: incremental updates keep the
+     * index exact, but native bulk statements outside CityService would otherwise be missed.
+     */
+    @Scheduled(fixedDelayString = "${city.facets.reconcile-interval-ms:600000}", initialDelayString = "${city.facets.reconcile-interval-ms:600000}")
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            synchronized (this) {
+                journal = new ArrayList<>();
+            }
+            Bitmaps fresh = new Bitmaps();
+            try {
+                load(fresh);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    journal = null;
+                }
+                throw e;
+            }
+            synchronized (this) {
+                journal.forEach(op -> op.accept(fresh));
+                journal = null;
+                bitmaps = fresh;
+            }
+        }
+    }
+
+    private void ensureLoaded() {
+        if (bitmaps == null) {
+            synchronized (rebuildLock) {
+                if (bitmaps == null) {
+                    rebuild();
+                }
+            }
+        }
+    }
+
+    private synchronized void apply(Consumer<Bitmaps> op) {
+        if (bitmaps != null) {
+            op.accept(bitmaps);
+        }
+        if (journal != null) {
+            journal.add(op);
+        }
+    }
+
+    private void load(Bitmaps target) {
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            connection.setReadOnly(true);
+            try (PreparedStatement statement = connection.prepareStatement(REBUILD_SQL,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                statement.setFetchSize(FETCH_SIZE);
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        String government = rs.getString(3);
+                        target.put(rs.getInt(1), rs.getLong(5),
+                                Climate.valueOf(rs.getString(2)).ordinal(),
+                                government == null ? NO_GOVERNMENT : Government.valueOf(government).ordinal(),
+                                StandardOfLiving.valueOf(rs.getString(4)).ordinal());
+                    }
+                }
+            } finally {
+                connection.rollback();
+                connection.setReadOnly(false);
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Facet index rebuild failed", e);
+        }
+    }
+
+    private static long intersection(BitSet a, BitSet b) {
+        BitSet copy = (BitSet) a.clone();
+        copy.and(b);
+        return copy.cardinality();
+    }
+
+    /**
+     * Selected values per column. Values inside a column are OR-ed; columns are AND-ed,
+     * or OR-ed as well when any is set. An empty selection does not constrain its column.
+     */
+    public static final class Filter {
+
+        private final BitSet climates = new BitSet();
+        private final BitSet governments = new BitSet();
+        private final BitSet standards = new BitSet();
+        private final boolean any;
+
+        public Filter(Collection<Climate> climates, Collection<String> governments,
+                      Collection<StandardOfLiving> standards, boolean any) {
+            if (climates != null) {
+                climates.forEach(c -> this.climates.set(c.ordinal()));
+            }
+            if (governments != null) {
+                for (String government : governments) {
+                    this.governments.set(parseGovernment(government));
+                }
+            }
+            if (standards != null) {
+                standards.forEach(s -> this.standards.set(s.ordinal()));
+            }
+            this.any = any;
+        }
+
+        private static int parseGovernment(String value) {
+            if ("null".equalsIgnoreCase(value)) {
+                return NO_GOVERNMENT;
+            }
+            try {
+                return Government.valueOf(value).ordinal();
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("Unknown government: " + value);
+            }
+        }
+    }
+
+    private static final class Bitmaps {
+
+        private static final long REMOVED = Long.MAX_VALUE;
+
+        private final BitSet live = new BitSet();
+        // newest row version applied per id, REMOVED once deleted
+        private long[] versions = new long[1024];
+        private final BitSet[] climate = bitsets(CLIMATES.length);
+        private final BitSet[] government = bitsets(GOVERNMENTS.length + 1);
+        private final BitSet[] standard = bitsets(STANDARDS.length);
+
+        void put(int id, long version, int climateValue, int governmentValue, int standardValue) {
+            if (version < version(id)) {
+                return;
+            }
+            clear(id);
+            setVersion(id, version);
+            live.set(id);
+            if (climateValue >= 0) {
+                climate[climateValue].set(id);
+            }
+            government[governmentValue].set(id);
+            if (standardValue >= 0) {
+                standard[standardValue].set(id);
+            }
+        }
+
+        void remove(int id) {
+            clear(id);
+            setVersion(id, REMOVED);
+        }
+
+        long version(int id) {
+            return id < versions.length ? versions[id] : 0;
+        }
+
+        private void setVersion(int id, long version) {
+            if (id >= versions.length) {
+                versions = Arrays.copyOf(versions, Math.max(id + 1, versions.length * 2));
+            }
+            versions[id] = version;
+        }
+
+        private void clear(int id) {
+            live.clear(id);
+            for (BitSet bits : climate) {
+                bits.clear(id);
+            }
+            for (BitSet bits : government) {
+                bits.clear(id);
+            }
+            for (BitSet bits : standard) {
+                bits.clear(id);
+            }
+        }
+
+        /** Live ids matching the filter, ignoring column skip (0..2) or none when -1. */
+        BitSet matching(Filter filter, int skip) {
+            List<BitSet> columns = new ArrayList<>(3);
+            if (skip != 0 && !filter.climates.isEmpty()) {
+                columns.add(union(climate, filter.climates));
+            }
+            if (skip != 1 && !filter.governments.isEmpty()) {
+                columns.add(union(government, filter.governments));
+            }
+            if (skip != 2 && !filter.standards.isEmpty()) {
+                columns.add(union(standard, filter.standards));
+            }
+            BitSet result = (BitSet) live.clone();
+            if (columns.isEmpty()) {
+                return result;
+            }
+            if (filter.any) {
+                BitSet anyColumn = new BitSet();
+                columns.forEach(anyColumn::or);
+                result.and(anyColumn);
+            } else {
+                columns.forEach(result::and);
+            }
+            return result;
+        }
+
+        private static BitSet union(BitSet[] bitmaps, BitSet selected) {
+            BitSet result = new BitSet();
+            for (int i = selected.nextSetBit(0); i >= 0; i = selected.nextSetBit(i + 1)) {
+                result.or(bitmaps[i]);
+            }
+            return result;
+        }
+
+        private static BitSet[] bitsets(int n) {
+            BitSet[] result = new BitSet[n];
+            for (int i = 0; i < n; i++) {
+                result[i] = new BitSet();
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package is.lab1.service;
+
+import is.lab1.exception.BadRequestException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Sparse fieldsets for city lists: "fields=id,name,population".
+ * Nested objects are requested as a whole ("coordinates", "governor").
+ */
+public final class CityFields {
+
+    public static final Set<String> SCALAR = Set.of("id", "name", "creationDate", "area", "population",
+            "establishmentDate", "capital", "metersAboveSeaLevel", "climate", "government", "standardOfLiving", "version");
+
+    public static final Set<String> NESTED = Set.of("coordinates", "governor");
+
+    /** What the city table in the UI shows, plus the version its row fragments are cached by. */
+    public static final List<String> LIST = List.of("id", "name", "coordinates", "area", "population", "climate", "capital", "version");
+
+    private CityFields() {
+    }
+
+    public static List<String> parse(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return LIST;
+        }
+        Set<String> parsed = new LinkedHashSet<>();
+        for (String field : fields.split(",")) {
+            String trimmed = field.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            if (!SCALAR.contains(trimmed) && !NESTED.contains(trimmed)) {
+                throw new BadRequestException("Unknown field: " + trimmed);
+            }
+            parsed.add(trimmed);
+        }
+        if (parsed.isEmpty()) {
+            return LIST;
+        }
+        return new ArrayList<>(parsed);
+    }
+
+    public static void checkSortable(String sortBy) {
+        if (!SCALAR.contains(sortBy)) {
+            throw new BadRequestException("Cannot sort by " + sortBy + ", use one of " + SCALAR);
+        }
+    }
+}
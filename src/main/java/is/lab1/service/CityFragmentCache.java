@@ -0,0 +1,94 @@
+package is.lab1.service;
+
+import is.lab1.dto.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Bounded LRU cache of rendered HTML fragments per city, keyed by fragment name and id
+ * and tagged with the city version it was rendered from. A hit requires the same version,
+ * and CityService evicts every fragment of a city on each write that touches it.
+ * Disabled (size 0) unless configured, so template edits show up immediately in development.
+ */
+@Component
+public class CityFragmentCache {
+
+    private final int maxSize;
+    private final Map<String, Entry> entries;
+    private final Set<String> fragments = new HashSet<>();
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public CityFragmentCache(@Value("${city.fragments.max-size:0}") int maxSize) {
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > CityFragmentCache.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public String get(String fragment, Integer id, Long version, Supplier<String> renderer) {
+        if (maxSize <= 0 || id == null || version == null) {
+            return renderer.get();
+        }
+        String key = key(fragment, id);
+        synchronized (this) {
+            Entry cached = entries.get(key);
+            if (cached != null && cached.version == version) {
+                hits++;
+                return cached.html;
+            }
+            misses++;
+        }
+        String html = renderer.get();
+        synchronized (this) {
+            fragments.add(fragment);
+            entries.put(key, new Entry(version, html));
+        }
+        return html;
+    }
+
+    public synchronized void evict(Integer id) {
+        if (id != null) {
+            for (String fragment : fragments) {
+                entries.remove(key(fragment, id));
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized CacheStats getStats() {
+        return new CacheStats(hits, misses, evictions, entries.size(), maxSize);
+    }
+
+    private static String key(String fragment, Integer id) {
+        return fragment + ":" + id;
+    }
+
+    private static final class Entry {
+        private final long version;
+        private final String html;
+
+        private Entry(long version, String html) {
+            this.version = version;
+            this.html = html;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package is.lab1.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import is.lab1.dto.BulkImportResult;
+import is.lab1.model.City;
+import is.lab1.repository.CityRepository;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams a JSON array or NDJSON body of cities and persists it in chunks,
+ * one transaction per chunk. Only one chunk is held in memory at a time.
+ * CBOR and Smile bodies are read the same way, as an array or a sequence of values.
+ */
+@Service
+public class CityImportService {
+
+    public enum Format { JSON, CBOR, SMILE }
+
+    private static final JsonFactory CBOR = new CBORFactory();
+    private static final JsonFactory SMILE = new SmileFactory();
+
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final CityRepository cityRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final CityChangeFeed cityChangeFeed;
+    private final CityStatistics cityStatistics;
+    private final CityTableVersion cityTableVersion;
+    private final CityFacetIndex cityFacetIndex;
+    private final int chunkSize;
+    private final int maxErrors;
+
+    @Autowired
+    public CityImportService(ObjectMapper objectMapper, Validator validator, CityRepository cityRepository,
+                             PlatformTransactionManager transactionManager, CityChangeFeed cityChangeFeed,
+                             CityStatistics cityStatistics, CityTableVersion cityTableVersion,
+                             CityFacetIndex cityFacetIndex, @Value("${city.import.chunk-size:500}") int chunkSize,
+                             @Value("${city.import.max-errors:1000}") int maxErrors) {
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.cityRepository = cityRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.cityChangeFeed = cityChangeFeed;
+        this.cityStatistics = cityStatistics;
+        this.cityTableVersion = cityTableVersion;
+        this.cityFacetIndex = cityFacetIndex;
+        this.chunkSize = chunkSize;
+        this.maxErrors = maxErrors;
+    }
+
+    public BulkImportResult importCities(InputStream body) throws IOException {
+        return importCities(body, Format.JSON);
+    }
+
+    public BulkImportResult importCities(InputStream body, Format format) throws IOException {
+        BulkImportResult result = new BulkImportResult(maxErrors);
+        List<JsonNode> chunk = new ArrayList<>(chunkSize);
+        long index = 0;
+        long chunkStart = 0;
+
+        try {
+            try (JsonParser parser = createParser(body, format)) {
+                JsonToken token = parser.nextToken();
+                boolean array = token == JsonToken.START_ARRAY;
+                if (array) {
+                    token = parser.nextToken();
+                }
+                try {
+                    while (token != null && token != JsonToken.END_ARRAY) {
+                        chunk.add(parser.readValueAsTree());
+                        index++;
+                        if (chunk.size() == chunkSize) {
+                            processChunk(chunk, chunkStart, result);
+                            chunk.clear();
+                            chunkStart = index;
+                        }
+                        token = parser.nextToken();
+                    }
+                } catch (JsonProcessingException e) {
+                    processChunk(chunk, chunkStart, result);
+                    chunk.clear();
+                    result.stop("Malformed input after record " + index + ", import stopped: " + e.getOriginalMessage());
+                }
+            }
+            processChunk(chunk, chunkStart, result);
+        } finally {
+            // earlier chunks stay committed when the body breaks off or a chunk throws
+            if (result.getImported() > 0) {
+                cityChangeFeed.publishResync();
+            }
+        }
+        return result;
+    }
+
+    private JsonParser createParser(InputStream body, Format format) throws IOException {
+        if (format == Format.JSON) {
+            return objectMapper.getFactory().createParser(body);
+        }
+        // records are bound from trees, so the binary parsers only need the JSON mapper as codec
+        JsonParser parser = (format == Format.CBOR ? CBOR : SMILE).createParser(body);
+        parser.setCodec(objectMapper);
+        return parser;
+    }
+
+    private void processChunk(List<JsonNode> nodes, long firstIndex, BulkImportResult result) {
+        if (nodes.isEmpty()) {
+            return;
+        }
+        result.addReceived(nodes.size());
+
+        // binding and bean validation are CPU-only, so they run in parallel
+        List<Object> checked = nodes.parallelStream().map(this::bindAndValidate).toList();
+
+        List<City> valid = new ArrayList<>(checked.size());
+        List<Long> validIndexes = new ArrayList<>(checked.size());
+        for (int i = 0; i < checked.size(); i++) {
+            Object outcome = checked.get(i);
+            if (outcome instanceof City city) {
+                valid.add(city);
+                validIndexes.add(firstIndex + i);
+            } else {
+                @SuppressWarnings("unchecked")
+                List<String> messages = (List<String>) outcome;
+                result.addError(firstIndex + i, messages);
+            }
+        }
+        if (valid.isEmpty()) {
+            return;
+        }
+
+        if (save(valid)) {
+            result.addImported(valid.size());
+            return;
+        }
+        // the chunk rolled back: retry record by record so only the offending ones fail
+        for (int i = 0; i < valid.size(); i++) {
+            City city = valid.get(i);
+            resetIds(city);
+            try {
+                transactionTemplate.executeWithoutResult(status -> cityRepository.save(city));
+                applied(List.of(city));
+                result.addImported(1);
+            } catch (RuntimeException e) {
+                result.addError(validIndexes.get(i), List.of(NestedExceptionUtils.getMostSpecificCause(e).getMessage()));
+            }
+        }
+    }
+
+    private boolean save(List<City> cities) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> cityRepository.saveAll(cities));
+        } catch (RuntimeException e) {
+            return false;
+        }
+        applied(cities);
+        return true;
+    }
+
+    private void applied(List<City> cities) {
+        cities.forEach(cityStatistics::add);
+        cities.forEach(cityFacetIndex::put);
+        cityTableVersion.bump();
+    }
+
+    private Object bindAndValidate(JsonNode node) {
+        City city;
+        try {
+            city = objectMapper.treeToValue(node, City.class);
+        } catch (JsonProcessingException e) {
+            return List.of(e.getOriginalMessage());
+        }
+        if (city == null) {
+            return List.of("Record is null");
+        }
+        resetIds(city);
+        List<String> messages = new ArrayList<>();
+        for (ConstraintViolation<City> violation : validator.validate(city)) {
+            messages.add(violation.getPropertyPath() + ": " + violation.getMessage());
+        }
+        return messages.isEmpty() ? city : messages;
+    }
+
+    // also undoes ids assigned by a rolled-back attempt
+    private static void resetIds(City city) {
+        city.setId(null);
+        city.setVersion(null);
+        if (city.getCoordinates() != null) {
+            city.getCoordinates().setId(null);
+        }
+        if (city.getGovernor() != null) {
+            city.getGovernor().setId(null);
+        }
+    }
+}
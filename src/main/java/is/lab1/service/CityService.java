@@ -1,106 +1,415 @@
 package is.lab1.service;
 
-import is.lab1.controller.WebSocketController;
+import is.lab1.dto.CacheStats;
+import is.lab1.dto.CityChange;
+import is.lab1.dto.CityFacets;
+import is.lab1.dto.CityLocation;
+import is.lab1.dto.CitySummary;
+import is.lab1.dto.CursorSlice;
+import is.lab1.dto.RelocationRequest;
 import is.lab1.model.City;
 import is.lab1.model.Climate;
 import is.lab1.repository.CityRepository;
 import is.lab1.exception.BadRequestException;
+import is.lab1.exception.PreconditionFailedException;
 import is.lab1.exception.ResourceNotFoundException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 @Service
 @Transactional
 public class CityService {
     
+    private static final int MAX_LOCATIONS = 10000;
+    // top-k lookups return full entities with eager children, so they are capped lower
+    private static final int MAX_TOP_K = 1000;
+    // updatePopulations binds two parameters per city and PostgreSQL allows 32767, each move touches two cities
+    private static final int MAX_RELOCATIONS = 8000;
+    // cursor pages are fetched with one extra row to detect the next page
+    private static final int MAX_PAGE_SIZE = 1000;
+
     private final CityRepository cityRepository;
-    private final WebSocketController webSocketController;
+    private final CityChangeFeed cityChangeFeed;
+    private final CityCache cityCache;
+    private final CityStatistics cityStatistics;
+    private final CityFacetIndex cityFacetIndex;
+    private final CityFragmentCache cityFragmentCache;
 
     @Autowired
-    public CityService(CityRepository cityRepository, WebSocketController webSocketController) {
+    public CityService(CityRepository cityRepository, CityChangeFeed cityChangeFeed,
+                       CityCache cityCache, CityStatistics cityStatistics, CityFacetIndex cityFacetIndex,
+                       CityFragmentCache cityFragmentCache) {
         this.cityRepository = cityRepository;
-        this.webSocketController = webSocketController;
+        this.cityChangeFeed = cityChangeFeed;
+        this.cityCache = cityCache;
+        this.cityStatistics = cityStatistics;
+        this.cityFacetIndex = cityFacetIndex;
+        this.cityFragmentCache = cityFragmentCache;
     }
 
+    @Transactional(readOnly = true)
     public List<City> getAllCities() {
         return cityRepository.findAll();
     }
     
+    @Transactional(readOnly = true)
     public Page<City> getAllCities(Pageable pageable) {
         return cityRepository.findAll(pageable);
     }
     
+    @Transactional(readOnly = true)
     public Page<City> getCitiesByName(String name, Pageable pageable) {
         if (name == null || name.trim().isEmpty()) {
             return cityRepository.findAll(pageable);
         }
-        return cityRepository.findByNameContainingIgnoreCase(name, pageable);
+        return cityRepository.findByLowerNameLike(CityRepository.containsPattern(name.toLowerCase()), pageable);
     }
     
+    @Transactional(readOnly = true)
+    public Page<Map<String, Object>> getCityFields(String name, List<String> fields, Pageable pageable) {
+        for (Sort.Order order : pageable.getSort()) {
+            CityFields.checkSortable(order.getProperty());
+        }
+        return cityRepository.findFields(name, fields, pageable);
+    }
+    
+    @Transactional(readOnly = true)
+    public CursorSlice<City> getCitiesAfter(String name, String sortBy, String sortDir, String after, int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new BadRequestException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        CityCursor.checkSortable(sortBy);
+        boolean descending = sortDir.equalsIgnoreCase("desc");
+        Object afterKey = null;
+        Integer afterId = null;
+        if (after != null && !after.isEmpty()) {
+            CityCursor cursor = CityCursor.decode(after);
+            if (!cursor.getSortBy().equals(sortBy) || cursor.isDescending() != descending) {
+                throw new BadRequestException("Cursor was issued for a different sort order");
+            }
+            afterKey = cursor.getKey();
+            afterId = cursor.getId();
+        }
+        List<City> rows = cityRepository.findSliceAfter(name, sortBy, descending, afterKey, afterId, size + 1);
+        boolean hasNext = rows.size() > size;
+        List<City> content = hasNext ? rows.subList(0, size) : rows;
+        String next = hasNext ? CityCursor.of(content.get(size - 1), sortBy, descending).encode() : null;
+        return new CursorSlice<>(content, size, hasNext, next);
+    }
+    
+    // stays on the primary: the result is kept in CityCache, which must not hold replica state
     public Optional<City> getCityById(Integer id) {
-        return cityRepository.findById(id);
+        return cityCache.get(id, cityRepository::findById);
     }
     
     public City saveCity(City city) {
-        City savedCity = cityRepository.save(city);
-        if (city.getId() == null) {
-            webSocketController.notifyCityCreated(savedCity);
-        } else {
-            webSocketController.notifyCityUpdated(savedCity);
+        if (city.getId() != null) {
+            return updateCity(city.getId(), city, null);
         }
+        city.setVersion(null);
+        City savedCity = cityRepository.save(city);
+        invalidate(savedCity.getId());
+        TransactionHooks.afterCommit(() -> {
+            cityStatistics.add(savedCity);
+            cityFacetIndex.put(savedCity);
+        });
+        cityChangeFeed.publish(() -> CityChange.created(savedCity));
         return savedCity;
     }
     
+    /**
+     * Inserts cities whose ids were taken from {@link #reserveCityId()} in the current
+     * transaction. Used by CityWriteBehind, which retries a failed group city by city,
+     * so nested ids assigned by a rolled-back attempt are cleared first.
+     */
+    public List<City> insertCities(List<City> cities) {
+        for (City city : cities) {
+            city.setVersion(null);
+            if (city.getCoordinates() != null) {
+                city.getCoordinates().setId(null);
+            }
+            if (city.getGovernor() != null) {
+                city.getGovernor().setId(null);
+            }
+        }
+        List<City> saved = cityRepository.saveAll(cities);
+        invalidate(saved.stream().map(City::getId).toArray(Integer[]::new));
+        TransactionHooks.afterCommit(() -> {
+            saved.forEach(cityStatistics::add);
+            saved.forEach(cityFacetIndex::put);
+        });
+        saved.forEach(city -> cityChangeFeed.publish(() -> CityChange.created(city)));
+        return saved;
+    }
+
+    // taken from the preallocated sequence block, so no round trip in the common case
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Integer reserveCityId() {
+        return cityRepository.reserveId();
+    }
+    
+    /**
+     * Overwrites the city with a single conditional UPDATE. With a non-null expectedVersion
+     * the write only happens if the stored version still matches; otherwise the caller
+     * gets a PreconditionFailedException.
+     */
+    public City updateCity(Integer id, City city, Long expectedVersion) {
+        List<Object[]> before = cityRepository.updateIfVersion(id, expectedVersion, city);
+        if (before.isEmpty()) {
+            if (!cityRepository.existsById(id)) {
+                throw new ResourceNotFoundException("City with id=" + id + " not found");
+            }
+            throw new PreconditionFailedException("City with id=" + id + " has been modified, current version differs from " + expectedVersion);
+        }
+        invalidate(id);
+        TransactionHooks.afterCommit(() -> {
+            cityStatistics.removeRows(before);
+            cityStatistics.add(city);
+            cityFacetIndex.put(city);
+        });
+        cityChangeFeed.publish(CityChange.updated(city));
+        return city;
+    }
+    
     public void deleteCity(Integer id) {
-        if (!cityRepository.existsById(id)) {
+        List<Object[]> before = cityRepository.aggregateByIdFn(id);
+        if (before.isEmpty()) {
             throw new ResourceNotFoundException("City with id=" + id + " not found");
         }
         cityRepository.deleteById(id);
-        webSocketController.notifyCityDeleted(id);
+        invalidate(id);
+        TransactionHooks.afterCommit(() -> {
+            cityStatistics.removeRows(before);
+            cityFacetIndex.remove(id);
+        });
+        cityChangeFeed.publish(CityChange.deleted(id));
     }
     
-    public List<City> findCitiesByNameContaining(String substring) {
-        return cityRepository.findByNameLikeFn("%" + substring + "%");
+    @Transactional(readOnly = true)
+    public List<City> findCitiesByNameContaining(String substring, int limit) {
+        if (limit < 1) {
+            throw new BadRequestException("Limit must be greater than 0");
+        }
+        return cityRepository.findByNameLikeFn(CityRepository.containsPattern(substring), limit);
     }
     
+    @Transactional(readOnly = true)
     public List<City> findCitiesByClimate(Climate climate) {
         return cityRepository.findByClimate(climate);
     }
     
+    // deletes one matching city, the lowest id, like fn_delete_by_climate did;
+    // CityBulkDeleteService removes all of them
     public void deleteCityByClimate(Climate climate) {
-        Integer deletedId = cityRepository.deleteAnyByClimateFn(climate.name());
-        if (deletedId == null || deletedId == 0) {
+        Map<Integer, Object[]> deleted = cityRepository.deleteByClimate(climate.name(), Integer.MIN_VALUE, 1);
+        if (deleted.isEmpty()) {
             throw new ResourceNotFoundException("No cities found for climate " + climate);
         }
+        Integer deletedId = deleted.keySet().iterator().next();
+        List<Object[]> before = new ArrayList<>(deleted.values());
+        invalidate(deletedId);
+        TransactionHooks.afterCommit(() -> {
+            cityStatistics.removeRows(before);
+            cityFacetIndex.remove(deletedId);
+        });
+        cityChangeFeed.publish(CityChange.deleted(deletedId));
+    }
+    
+    // answered from memory, so no connection is held
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public CityFacets getFacets(CityFacetIndex.Filter filter) {
+        return cityFacetIndex.facets(filter);
     }
     
+    @Transactional(readOnly = true)
+    public Page<City> getCitiesByFacets(CityFacetIndex.Filter filter, Pageable pageable) {
+        Page<Integer> ids = cityFacetIndex.matchingIds(filter, pageable);
+        List<City> cities = new ArrayList<>(cityRepository.findAllById(ids.getContent()));
+        cities.sort(Comparator.comparing(City::getId));
+        return new PageImpl<>(cities, pageable, ids.getTotalElements());
+    }
+    
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public Double getAverageMetersAboveSeaLevel() {
-        return cityRepository.avgMaslFn();
+        return cityStatistics.getAverageMetersAboveSeaLevel();
+    }
+    
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public CitySummary getSummary() {
+        return cityStatistics.getSummary();
     }
     
+    @Transactional(readOnly = true)
     public Optional<City> getCityWithMinPopulation() {
         return cityRepository.findCityWithMinPopulation();
     }
+    
+    @Transactional(readOnly = true)
+    public List<City> getSmallestCities(int k) {
+        return cityRepository.findByOrderByPopulationAscIdAsc(topK(k));
+    }
+    
+    @Transactional(readOnly = true)
+    public List<City> getLargestCities(int k) {
+        return cityRepository.findByOrderByPopulationDescIdDesc(topK(k));
+    }
 
     
     @Transactional
     public void relocatePopulationToMinPopulationCity(Integer fromCityId) {
-        cityRepository.relocateToMinFn(fromCityId);
-        cityRepository.clearPopulation(fromCityId);
+        Integer minCityId = cityRepository.findMinPopulationIdFn();
+        if (minCityId == null) {
+            throw new ResourceNotFoundException("No target city");
+        }
+        if (minCityId.equals(fromCityId)) {
+            throw new BadRequestException("Source city already has the minimal population");
+        }
+        relocatePopulations(List.of(new RelocationRequest(fromCityId, minCityId)));
     }
 
     @Transactional
     public void relocatePopulation(Integer fromCityId, Integer toCityId) {
-        if (fromCityId.equals(toCityId)) {
-            throw new BadRequestException("Source and target city must be different");
+        relocatePopulations(List.of(new RelocationRequest(fromCityId, toCityId)));
+    }
+
+    /**
+     * Applies the moves in order inside one transaction and returns the resulting
+     * population of every city involved. All rows are locked up front in id order,
+     * so concurrent batches cannot deadlock or lose updates, and they are written
+     * back with a single UPDATE.
+     */
+    @Transactional
+    public Map<Integer, Integer> relocatePopulations(List<RelocationRequest> moves) {
+        if (moves == null || moves.isEmpty()) {
+            throw new BadRequestException("At least one relocation is required");
+        }
+        if (moves.size() > MAX_RELOCATIONS) {
+            throw new BadRequestException("At most " + MAX_RELOCATIONS + " relocations are allowed per batch");
+        }
+        Set<Integer> ids = new TreeSet<>();
+        for (RelocationRequest move : moves) {
+            if (move.getFromCityId() == null || move.getToCityId() == null) {
+                throw new BadRequestException("fromCityId and toCityId are required");
+            }
+            if (move.getFromCityId().equals(move.getToCityId())) {
+                throw new BadRequestException("Source and target city must be different");
+            }
+            ids.add(move.getFromCityId());
+            ids.add(move.getToCityId());
+        }
+
+        Map<Integer, Integer> locked = cityRepository.lockPopulations(ids);
+        for (Integer id : ids) {
+            if (!locked.containsKey(id)) {
+                throw new ResourceNotFoundException("City with id=" + id + " not found");
+            }
+        }
+
+        Map<Integer, Long> populations = new TreeMap<>();
+        locked.forEach((id, population) -> populations.put(id, population.longValue()));
+        for (RelocationRequest move : moves) {
+            long moved = populations.get(move.getFromCityId());
+            populations.merge(move.getToCityId(), moved, Long::sum);
+            populations.put(move.getFromCityId(), 0L);
+        }
+
+        Map<Integer, Integer> result = new TreeMap<>();
+        for (Map.Entry<Integer, Long> entry : populations.entrySet()) {
+            if (entry.getValue() > Integer.MAX_VALUE) {
+                throw new BadRequestException("Population of city with id=" + entry.getKey() + " would overflow");
+            }
+            result.put(entry.getKey(), entry.getValue().intValue());
+        }
+
+        // population is moved between rows, so CityStatistics totals are unchanged
+        Map<Integer, Long> versions = cityRepository.updatePopulations(result);
+        invalidate(ids.toArray(new Integer[0]));
+        result.forEach((id, population) ->
+                cityChangeFeed.publish(CityChange.population(id, population, versions.get(id))));
+        return result;
+    }
+
+    @Transactional(readOnly = true)
+    public List<CityLocation> getCitiesInBox(double minX, double minY, double maxX, double maxY, int limit) {
+        if (minX > maxX || minY > maxY) {
+            throw new BadRequestException("Box minimum must not exceed its maximum");
+        }
+        return locations(cityRepository.findLocationsInBoxFn(minX, minY, maxX, maxY, checkLimit(limit)));
+    }
+    
+    @Transactional(readOnly = true)
+    public List<CityLocation> getCitiesWithin(double x, double y, double radius, int limit) {
+        if (!(radius > 0)) {
+            throw new BadRequestException("Radius must be greater than 0");
+        }
+        return locations(cityRepository.findLocationsWithinFn(x, y, radius, checkLimit(limit)));
+    }
+    
+    @Transactional(readOnly = true)
+    public List<CityLocation> getNearestCities(double x, double y, int k) {
+        if (k < 1) {
+            throw new BadRequestException("k must be greater than 0");
+        }
+        return locations(cityRepository.findNearestLocationsFn(x, y, checkLimit(k)));
+    }
+
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public CacheStats getCacheStats() {
+        return cityCache.getStats();
+    }
+
+    private static Pageable topK(int k) {
+        if (k < 1 || k > MAX_TOP_K) {
+            throw new BadRequestException("k must be between 1 and " + MAX_TOP_K);
+        }
+        return PageRequest.of(0, k);
+    }
+
+    private static int checkLimit(int limit) {
+        if (limit < 1 || limit > MAX_LOCATIONS) {
+            throw new BadRequestException("Limit must be between 1 and " + MAX_LOCATIONS);
+        }
+        return limit;
+    }
+
+    private static List<CityLocation> locations(List<Object[]> rows) {
+        List<CityLocation> locations = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            locations.add(new CityLocation(((Number) row[0]).intValue(), (String) row[1],
+                    ((Number) row[2]).doubleValue(), ((Number) row[3]).floatValue(), ((Number) row[4]).intValue(),
+                    row.length > 5 ? ((Number) row[5]).doubleValue() : null));
+        }
+        return locations;
+    }
+
+    // Evict now and once more after completion. A reader that loaded the row before the commit
+    // can still return the old version, but CityCache will not keep it: the second eviction
+    // either removes it or lands while the load is in flight, and then the load is not cached.
+    private void invalidate(Integer... ids) {
+        for (Integer id : ids) {
+            cityCache.evict(id);
         }
-        cityRepository.relocateFn(fromCityId, toCityId);
-        cityRepository.clearPopulation(fromCityId);
+        TransactionHooks.afterCompletion(() -> {
+            for (Integer id : ids) {
+                cityCache.evict(id);
+                cityFragmentCache.evict(id);
+            }
+        });
     }
 }
@@ -0,0 +1,180 @@
+package is.lab1.service;
+
+import is.lab1.dto.CitySummary;
+import is.lab1.model.City;
+import is.lab1.model.Climate;
+import is.lab1.repository.CityRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Running sums and counts over the cities table, updated by CityService after
+ * each commit and periodically reconciled against the database.
+ * <p>
+ * Deltas come as aggregate rows: climate, count, sum(population), sum(area),
+ * count(meters_above_sea_level), sum(meters_above_sea_level).
+ * <p>
+ * Deltas applied while a reconcile query runs are journaled and replayed on top of
+ * its result, so the fresh totals are always installed. A delta whose commit raced the
+ * start of the query may be counted twice; the next reconcile corrects that.
+ */
+@Component
+public class CityStatistics {
+
+    private final CityRepository cityRepository;
+
+    private final long[] climateCounts = new long[Climate.values().length];
+    private long count;
+    private long population;
+    private double area;
+    private long maslCount;
+    private double maslSum;
+
+    private boolean initialized;
+    private List<Runnable> journal;
+    private ZonedDateTime reconciledAt;
+    // one reconcile at a time, so journals never overlap
+    private final Object reconcileLock = new Object();
+
+    @Autowired
+    public CityStatistics(CityRepository cityRepository) {
+        this.cityRepository = cityRepository;
+    }
+
+    public synchronized void add(City city) {
+        apply(city, 1);
+    }
+
+    public synchronized void remove(City city) {
+        apply(city, -1);
+    }
+
+    public synchronized void addRows(List<Object[]> rows) {
+        applyRows(rows, 1);
+    }
+
+    public synchronized void removeRows(List<Object[]> rows) {
+        applyRows(rows, -1);
+    }
+
+    public Double getAverageMetersAboveSeaLevel() {
+        return getSummary().getAverageMetersAboveSeaLevel();
+    }
+
+    public CitySummary getSummary() {
+        synchronized (this) {
+            if (initialized) {
+                return snapshot();
+            }
+        }
+        synchronized (reconcileLock) {
+            // another caller may have installed the totals while this one waited
+            synchronized (this) {
+                if (initialized) {
+                    return snapshot();
+                }
+            }
+            return reconcile();
+        }
+    }
+
+    /**
+     * Replaces the running totals with a fresh aggregate plus the deltas applied while it ran.
+     */
+    @Scheduled(fixedDelayString = "${city.stats.reconcile-interval-ms:60000}")
+    public CitySummary reconcile() {
+        synchronized (reconcileLock) {
+            synchronized (this) {
+                journal = new ArrayList<>();
+            }
+            List<Object[]> rows;
+            try {
+                rows = cityRepository.aggregateByClimateFn();
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    journal = null;
+                }
+                throw e;
+            }
+            synchronized (this) {
+                count = 0;
+                population = 0;
+                area = 0;
+                maslCount = 0;
+                maslSum = 0;
+                Arrays.fill(climateCounts, 0);
+                accumulateRows(rows, 1);
+                journal.forEach(Runnable::run);
+                journal = null;
+                initialized = true;
+                reconciledAt = ZonedDateTime.now();
+                return snapshot();
+            }
+        }
+    }
+
+    private void apply(City city, int sign) {
+        record(() -> accumulate(city, sign));
+    }
+
+    private void applyRows(List<Object[]> rows, int sign) {
+        record(() -> accumulateRows(rows, sign));
+    }
+
+    private void record(Runnable delta) {
+        if (journal != null) {
+            journal.add(delta);
+        }
+        if (initialized) {
+            delta.run();
+        }
+    }
+
+    private void accumulate(City city, int sign) {
+        count += sign;
+        population += (long) sign * city.getPopulation();
+        area += sign * (city.getArea() == null ? 0 : city.getArea());
+        if (city.getMetersAboveSeaLevel() != null) {
+            maslCount += sign;
+            maslSum += sign * city.getMetersAboveSeaLevel();
+        }
+        if (city.getClimate() != null) {
+            climateCounts[city.getClimate().ordinal()] += sign;
+        }
+    }
+
+    private void accumulateRows(List<Object[]> rows, int sign) {
+        for (Object[] row : rows) {
+            long rowCount = number(row[1]).longValue();
+            count += sign * rowCount;
+            population += sign * number(row[2]).longValue();
+            area += sign * number(row[3]).doubleValue();
+            maslCount += sign * number(row[4]).longValue();
+            maslSum += sign * number(row[5]).doubleValue();
+            if (row[0] != null) {
+                climateCounts[Climate.valueOf(row[0].toString()).ordinal()] += sign * rowCount;
+            }
+        }
+    }
+
+    private CitySummary snapshot() {
+        Map<Climate, Long> byClimate = new EnumMap<>(Climate.class);
+        for (Climate climate : Climate.values()) {
+            byClimate.put(climate, climateCounts[climate.ordinal()]);
+        }
+        Double averageMasl = maslCount == 0 ? null : maslSum / maslCount;
+        return new CitySummary(count, population, area, averageMasl, byClimate, reconciledAt);
+    }
+
+    private static Number number(Object value) {
+        return value == null ? 0 : (Number) value;
+    }
+}
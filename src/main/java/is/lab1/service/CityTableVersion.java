@@ -0,0 +1,54 @@
+package is.lab1.service;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory change counter for the cities table, bumped after every committed write.
+ * List responses derive a weak ETag and Last-Modified from it, so conditional
+ * requests can be answered before any query runs.
+ * <p>
+ * The epoch changes on every restart, so tags issued by an older run never match.
+ * Last-Modified only has whole seconds on the wire, so every bump moves it to a later
+ * second than the previous one; during bursts of writes it runs ahead of the clock.
+ */
+@Component
+public class CityTableVersion {
+
+    private final String epoch = Long.toHexString(System.currentTimeMillis());
+    private volatile Snapshot current = new Snapshot(0, nextSecond());
+
+    public Snapshot current() {
+        return current;
+    }
+
+    public synchronized void bump() {
+        current = new Snapshot(current.counter + 1, Math.max(nextSecond(), current.lastModified + 1000));
+    }
+
+    private static long nextSecond() {
+        return (System.currentTimeMillis() / 1000 + 1) * 1000;
+    }
+
+    public final class Snapshot {
+
+        private final long counter;
+        private final long lastModified;
+
+        private Snapshot(long counter, long lastModified) {
+            this.counter = counter;
+            this.lastModified = lastModified;
+        }
+
+        public long getCounter() {
+            return counter;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public String getETag() {
+            return "W/\"" + epoch + "-" + counter + "\"";
+        }
+    }
+}
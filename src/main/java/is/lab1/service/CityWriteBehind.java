@@ -0,0 +1,196 @@
+package is.lab1.service;
+
+import is.lab1.dto.CityWriteStats;
+import is.lab1.dto.CityWriteStatus;
+import is.lab1.exception.ServiceUnavailableException;
+import is.lab1.exception.TooManyRequestsException;
+import is.lab1.model.City;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Write-behind path for {@code POST /api/cities} with {@code Prefer: respond-async}.
+ * A validated city gets its id from the preallocated sequence block and is queued;
+ * the scheduled flush inserts queued cities in groups, one transaction per group,
+ * so a burst costs one commit per group instead of one per request.
+ *
+ * <p>A city is durable only once its status is WRITTEN. Cities still queued when the
+ * process dies are lost, and after a restart their status URL answers 404. Their ids
+ * are never handed out again, because the database sequence is already past the whole
+ * block. A graceful shutdown stops accepting and drains the queue first.
+ */
+@Component
+public class CityWriteBehind {
+
+    private final CityService cityService;
+    private final BlockingQueue<City> queue;
+    private final int capacity;
+    private final int batchSize;
+    private final Map<Integer, CityWriteStatus> pending = new ConcurrentHashMap<>();
+    private final Map<Integer, CityWriteStatus> completed;
+    // submitters share the read lock, so shutdown cannot slip between the check and the offer
+    private final ReadWriteLock acceptLock = new ReentrantReadWriteLock();
+    private boolean accepting = true;
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    @Autowired
+    public CityWriteBehind(CityService cityService,
+                           @Value("${city.write-behind.capacity:10000}") int capacity,
+                           @Value("${city.write-behind.batch-size:500}") int batchSize,
+                           @Value("${city.write-behind.status-retention:10000}") int statusRetention) {
+        this.cityService = cityService;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.completed = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, CityWriteStatus> eldest) {
+                return size() > statusRetention;
+            }
+        });
+    }
+
+    /**
+     * Assigns the city an id and queues it. Throws TooManyRequestsException when the queue
+     * is full and ServiceUnavailableException once shutdown has begun.
+     */
+    public CityWriteStatus submit(City city) {
+        acceptLock.readLock().lock();
+        try {
+            if (!accepting) {
+                throw new ServiceUnavailableException("City writes are shutting down");
+            }
+            if (queue.remainingCapacity() == 0) {
+                rejected.incrementAndGet();
+                throw new TooManyRequestsException("City write queue is full");
+            }
+            city.setId(cityService.reserveCityId());
+            CityWriteStatus status = new CityWriteStatus(city.getId(), CityWriteStatus.State.QUEUED, null);
+            pending.put(city.getId(), status);
+            if (!queue.offer(city)) {
+                // the reserved id is simply skipped
+                pending.remove(city.getId());
+                rejected.incrementAndGet();
+                throw new TooManyRequestsException("City write queue is full");
+            }
+            accepted.incrementAndGet();
+            return status;
+        } finally {
+            acceptLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reports QUEUED, WRITTEN or FAILED for an id handed out by {@link #submit}. Ids whose
+     * status has been forgotten, for example after a restart, are WRITTEN if the row exists.
+     */
+    public Optional<CityWriteStatus> getStatus(Integer id) {
+        CityWriteStatus status = completed.get(id);
+        if (status == null) {
+            status = pending.get(id);
+        }
+        if (status == null) {
+            status = completed.get(id);
+        }
+        if (status != null) {
+            return Optional.of(status);
+        }
+        return cityService.getCityById(id)
+                .map(city -> new CityWriteStatus(id, CityWriteStatus.State.WRITTEN, null));
+    }
+
+    /**
+     * Writes everything queued so far in groups of batch-size. A group that fails is retried
+     * one city per transaction, so one bad row only fails itself. Returns the number written.
+     */
+    @Scheduled(fixedDelayString = "${city.write-behind.flush-interval-ms:20}")
+    public synchronized int flush() {
+        int total = 0;
+        List<City> group = new ArrayList<>(batchSize);
+        while (queue.drainTo(group, batchSize) > 0) {
+            total += write(group);
+            group.clear();
+        }
+        return total;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        acceptLock.writeLock().lock();
+        try {
+            accepting = false;
+        } finally {
+            acceptLock.writeLock().unlock();
+        }
+        flush();
+    }
+
+    public CityWriteStats getStats() {
+        return new CityWriteStats(queue.size(), capacity, accepted.get(), rejected.get(),
+                written.get(), failed.get(), batches.get());
+    }
+
+    private int write(List<City> group) {
+        batches.incrementAndGet();
+        try {
+            cityService.insertCities(group);
+            group.forEach(this::markWritten);
+            return group.size();
+        } catch (RuntimeException e) {
+            if (group.size() == 1) {
+                markFailed(group.get(0), e);
+                return 0;
+            }
+        }
+        int count = 0;
+        for (City city : group) {
+            try {
+                cityService.insertCities(List.of(city));
+                markWritten(city);
+                count++;
+            } catch (RuntimeException e) {
+                markFailed(city, e);
+            }
+        }
+        return count;
+    }
+
+    // completed first, then pending, so a concurrent getStatus never sees neither
+    private void markWritten(City city) {
+        complete(new CityWriteStatus(city.getId(), CityWriteStatus.State.WRITTEN, null));
+        written.incrementAndGet();
+    }
+
+    private void markFailed(City city, RuntimeException e) {
+        String message = NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+        complete(new CityWriteStatus(city.getId(), CityWriteStatus.State.FAILED, message));
+        failed.incrementAndGet();
+    }
+
+    private void complete(CityWriteStatus status) {
+        completed.put(status.getId(), status);
+        pending.remove(status.getId());
+    }
+}
@@ -0,0 +1,6 @@
+
+-- Composite (sort key, id) indexes backing keyset pagination
+CREATE INDEX IF NOT EXISTS idx_cities_name_id ON cities (name, id);
+CREATE INDEX IF NOT EXISTS idx_cities_population_id ON cities (population, id);
+CREATE INDEX IF NOT EXISTS idx_cities_area_id ON cities (area, id);
+CREATE INDEX IF NOT EXISTS idx_cities_creation_date_id ON cities (creation_date, id);
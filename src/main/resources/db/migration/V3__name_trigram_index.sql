@@ -0,0 +1,7 @@
+
+-- Trigram index so that lower(name) LIKE '%substr%' is served by a bitmap
+-- index scan instead of a sequential scan of cities.
+-- Compare with: EXPLAIN ANALYZE SELECT * FROM cities WHERE lower(name) LIKE '%ville%';
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE INDEX IF NOT EXISTS idx_cities_name_trgm ON cities USING gin (lower(name) gin_trgm_ops);
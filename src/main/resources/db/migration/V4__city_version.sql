@@ -0,0 +1,3 @@
+
+-- Optimistic locking version, bumped by every write to a city row
+ALTER TABLE cities ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,6 @@
+-- GiST index over city locations, serving bounding-box (<@ box), radius (<@ circle)
+-- and k-nearest (ORDER BY <-> LIMIT k) queries without scanning coordinates.
+-- Queries must use the same point(x_coordinate, y_coordinate) expression to hit it.
+-- Compare with: EXPLAIN ANALYZE SELECT id FROM coordinates
+--   ORDER BY point(x_coordinate, y_coordinate) <-> point(0, 0) LIMIT 10;
+CREATE INDEX IF NOT EXISTS idx_coordinates_point ON coordinates USING gist (point(x_coordinate, y_coordinate));
@@ -0,0 +1,27 @@
+-- Pooled id allocation (allocationSize = 50) for cities, coordinates and humans.
+-- EclipseLink calls nextval once per 50 ids and uses (value - 49 .. value), so each
+-- sequence must step by 50 and its next value must leave that whole block above
+-- every id already in use. coordinates/humans keep their serial defaults, which
+-- stay safe because a value taken by a default is never handed out as a block end.
+-- Run with the application stopped: instances still on allocationSize = 1 could
+-- take a value between the ALTER and the setval.
+BEGIN;
+
+CREATE SEQUENCE IF NOT EXISTS cities_id_seq;
+CREATE SEQUENCE IF NOT EXISTS coordinates_id_seq;
+CREATE SEQUENCE IF NOT EXISTS humans_id_seq;
+
+ALTER SEQUENCE cities_id_seq INCREMENT BY 50;
+ALTER SEQUENCE coordinates_id_seq INCREMENT BY 50;
+ALTER SEQUENCE humans_id_seq INCREMENT BY 50;
+
+SELECT setval('cities_id_seq',
+    GREATEST((SELECT COALESCE(MAX(id), 0) FROM cities), (SELECT last_value FROM cities_id_seq)));
+SELECT setval('coordinates_id_seq',
+    GREATEST((SELECT COALESCE(MAX(id), 0) FROM coordinates), (SELECT last_value FROM coordinates_id_seq)));
+SELECT setval('humans_id_seq',
+    GREATEST((SELECT COALESCE(MAX(id), 0) FROM humans), (SELECT last_value FROM humans_id_seq)));
+
+COMMIT;
+
+-- Check: SELECT sequencename, increment_by, last_value FROM pg_sequences WHERE sequencename LIKE '%_id_seq';
@@ -0,0 +1,192 @@
+package is.lab1.config;
+
+import is.lab1.model.City;
+import is.lab1.model.Climate;
+import is.lab1.model.Coordinates;
+import is.lab1.model.StandardOfLiving;
+import is.lab1.service.CityService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two in-memory H2 databases stand in for primary and replica. Replication is not
+ * simulated: the replica only gets the schema, so a read that finds a row written
+ * through the service must have gone to the primary.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:primary;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "city.datasource.replica.url=jdbc:h2:mem:replica;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "city.datasource.replica.lag-query=SELECT lag_seconds FROM replica_lag",
+        "city.datasource.replica.max-lag-ms=1000",
+        "city.datasource.replica.lag-check-interval-ms=3600000",
+        "spring.websocket.sockjs.enabled=false"
+})
+class ReadReplicaRoutingTest {
+
+    @Autowired
+    private CityService cityService;
+
+    @Autowired
+    private ReplicaLagMonitor replicaLagMonitor;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    @Qualifier("primaryDataSource")
+    private DataSource primaryDataSource;
+
+    @Autowired
+    @Qualifier("replicaDataSource")
+    private DataSource replicaDataSource;
+
+    private JdbcTemplate primary;
+    private JdbcTemplate replica;
+
+    @BeforeEach
+    void copySchemaToReplica() {
+        primary = new JdbcTemplate(primaryDataSource);
+        replica = new JdbcTemplate(replicaDataSource);
+        replica.execute("DROP ALL OBJECTS");
+        for (String statement : primary.queryForList("SCRIPT NODATA", String.class)) {
+            replica.execute(statement);
+        }
+        replica.execute("CREATE TABLE replica_lag (lag_seconds DOUBLE PRECISION)");
+        replica.update("INSERT INTO replica_lag VALUES (0)");
+    }
+
+    @Test
+    void readOnlyQueriesGoToCurrentReplica() {
+        City saved = cityService.saveCity(city("Routed"));
+        replicaLagMonitor.check();
+
+        assertThat(replicaLagMonitor.isReplicaUsable()).isTrue();
+        assertThat(countByName(primary, "Routed")).isEqualTo(1);
+        assertThat(countByName(replica, "Routed")).isZero();
+        assertThat(cityService.getCitiesByName("Routed", PageRequest.of(0, 10)).getTotalElements()).isZero();
+        assertThat(cityService.findCitiesByNameContaining("Routed", 10)).isEmpty();
+        // read-write transactions, and reads feeding CityCache, stay on the primary
+        assertThat(cityService.getCityById(saved.getId())).isPresent();
+    }
+
+    @Test
+    void primaryOnlyReadsSkipCurrentReplica() {
+        cityService.saveCity(city("Tagged"));
+        replicaLagMonitor.check();
+
+        assertThat(replicaLagMonitor.isReplicaUsable()).isTrue();
+        assertThat(ReadReplicaRoutingDataSource.onPrimary(
+                () -> cityService.getCitiesByName("Tagged", PageRequest.of(0, 10))).getTotalElements()).isEqualTo(1);
+        assertThat(cityService.getCitiesByName("Tagged", PageRequest.of(0, 10)).getTotalElements()).isZero();
+    }
+
+    @Test
+    void laggingReplicaFallsBackToPrimary() {
+        cityService.saveCity(city("Lagging"));
+        replica.update("UPDATE replica_lag SET lag_seconds = 30");
+        replicaLagMonitor.check();
+
+        assertThat(replicaLagMonitor.isReplicaUsable()).isFalse();
+        assertThat(replicaLagMonitor.getLagMs()).isEqualTo(30_000);
+        assertThat(cityService.getCitiesByName("Lagging", PageRequest.of(0, 10)).getTotalElements()).isEqualTo(1);
+    }
+
+    @Test
+    void failingLagCheckFallsBackToPrimary() {
+        cityService.saveCity(city("Unreachable"));
+        replica.execute("DROP TABLE replica_lag");
+        replicaLagMonitor.check();
+
+        assertThat(replicaLagMonitor.isReplicaUsable()).isFalse();
+        assertThat(replicaLagMonitor.getLagMs()).isEqualTo(-1);
+        List<City> found = cityService.findCitiesByNameContaining("Unreachable", 10);
+        assertThat(found).extracting(City::getName).containsExactly("Unreachable");
+    }
+
+    @Test
+    void verdictExpiresWhenChecksStopRunning() throws InterruptedException {
+        ReplicaLagMonitor monitor = new ReplicaLagMonitor(replicaDataSource, "SELECT lag_seconds FROM replica_lag", 1000, 20);
+        monitor.check();
+        assertThat(monitor.isReplicaUsable()).isTrue();
+
+        Thread.sleep(20 * (ReplicaLagMonitor.STALE_AFTER_CHECKS + 2));
+
+        assertThat(monitor.isReplicaUsable()).isFalse();
+        assertThat(monitor.getLagMs()).isZero();
+        monitor.check();
+        assertThat(monitor.isReplicaUsable()).isTrue();
+    }
+
+    // EclipseLink keeps objects read inside a database transaction out of the shared cache,
+    // so replica state must never be seen by later primary reads
+    @Test
+    void replicaReadsDoNotPopulateSharedCache() {
+        City saved = cityService.saveCity(city("Fresh"));
+        copyRow("coordinates", saved.getCoordinates().getId());
+        copyRow("cities", saved.getId());
+        replica.update("UPDATE cities SET name = 'Stale' WHERE id = ?", saved.getId());
+        replicaLagMonitor.check();
+        entityManagerFactory.getCache().evictAll();
+
+        assertThat(cityService.findCitiesByNameContaining("Stale", 10)).hasSize(1);
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            assertThat(entityManager.find(City.class, saved.getId()).getName()).isEqualTo("Fresh");
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    @Test
+    void replicaJpqlReadsDoNotPopulateSharedCache() {
+        City saved = cityService.saveCity(city("Current"));
+        copyRow("coordinates", saved.getCoordinates().getId());
+        copyRow("cities", saved.getId());
+        replica.update("UPDATE cities SET name = 'Outdated' WHERE id = ?", saved.getId());
+        replicaLagMonitor.check();
+        entityManagerFactory.getCache().evictAll();
+
+        assertThat(cityService.getCitiesByName("Outdated", PageRequest.of(0, 10)).getContent())
+                .extracting(City::getName).containsExactly("Outdated");
+        assertThat(entityManagerFactory.getCache().contains(City.class, saved.getId())).isFalse();
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            assertThat(entityManager.find(City.class, saved.getId()).getName()).isEqualTo("Current");
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    private void copyRow(String table, Number id) {
+        Map<String, Object> row = primary.queryForMap("SELECT * FROM " + table + " WHERE id = ?", id);
+        String columns = String.join(", ", row.keySet());
+        String params = String.join(", ", Collections.nCopies(row.size(), "?"));
+        replica.update("INSERT INTO " + table + " (" + columns + ") VALUES (" + params + ")", row.values().toArray());
+    }
+
+    private static int countByName(JdbcTemplate jdbc, String name) {
+        Integer count = jdbc.queryForObject("SELECT COUNT(*) FROM cities WHERE name = ?", Integer.class, name);
+        return count == null ? 0 : count;
+    }
+
+    private static City city(String name) {
+        return new City(name, new Coordinates(1.0, 2.0f), 10f, 100, Climate.OCEANIC, StandardOfLiving.VERY_LOW, null);
+    }
+}
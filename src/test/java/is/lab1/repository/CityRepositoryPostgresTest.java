@@ -0,0 +1,203 @@
+package is.lab1.repository;
+
+import is.lab1.PostgresTestDatabase;
+import is.lab1.config.PooledSequenceCheck;
+import is.lab1.dto.BulkDeleteResult;
+import is.lab1.dto.CityChange;
+import is.lab1.dto.CityChangeBatch;
+import is.lab1.dto.CursorSlice;
+import is.lab1.exception.BadRequestException;
+import is.lab1.exception.PreconditionFailedException;
+import is.lab1.model.City;
+import is.lab1.model.Climate;
+import is.lab1.model.Coordinates;
+import is.lab1.model.Human;
+import is.lab1.model.StandardOfLiving;
+import is.lab1.service.CityBulkDeleteService;
+import is.lab1.service.CityChangeFeed;
+import is.lab1.service.CityService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Runs the native write statements against PostgreSQL, which, unlike H2, types every
+ * placeholder: a null bound where the column is not a string must be cast explicitly.
+ * H2 cannot run their data-modifying CTEs at all.
+ */
+@SpringBootTest(properties = "spring.websocket.sockjs.enabled=false")
+class CityRepositoryPostgresTest {
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) {
+        PostgresTestDatabase.register(registry, "city_repository");
+    }
+
+    @Autowired
+    private CityService cityService;
+
+    @Autowired
+    private CityBulkDeleteService cityBulkDeleteService;
+
+    @Autowired
+    private CityChangeFeed cityChangeFeed;
+
+    @Autowired
+    private PooledSequenceCheck pooledSequenceCheck;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void updateWithoutIfMatchAcceptsNullOptionalColumns() {
+        City saved = cityService.saveCity(city("Nullable", new Date(0), 120f, new Human("Mayor", 1.8)));
+
+        City changed = city("Nullable", null, null, null);
+        City updated = cityService.updateCity(saved.getId(), changed, null);
+
+        assertThat(updated.getVersion()).isEqualTo(saved.getVersion() + 1);
+        Map<String, Object> row = jdbcTemplate.queryForMap(
+                "SELECT establishment_date, meters_above_sea_level, governor_id FROM cities WHERE id = ?", saved.getId());
+        assertThat(row.get("establishment_date")).isNull();
+        assertThat(row.get("meters_above_sea_level")).isNull();
+        assertThat(row.get("governor_id")).isNull();
+    }
+
+    @Test
+    void updateWithIfMatchChecksVersion() {
+        City saved = cityService.saveCity(city("Versioned", null, null, null));
+
+        City updated = cityService.updateCity(saved.getId(),
+                city("Versioned", new Date(0), 50f, new Human("Mayor", 1.7)), saved.getVersion());
+
+        assertThat(updated.getGovernor().getId()).isNotNull();
+        assertThatThrownBy(() -> cityService.updateCity(saved.getId(), city("Versioned", null, null, null), saved.getVersion()))
+                .isInstanceOf(PreconditionFailedException.class);
+    }
+
+    @Test
+    void saveWithIdUpdatesUnconditionally() {
+        City saved = cityService.saveCity(city("Resaved", new Date(0), 10f, null));
+
+        City again = city("Resaved again", null, null, new Human("Mayor", 1.9));
+        again.setId(saved.getId());
+        cityService.saveCity(again);
+
+        assertThat(jdbcTemplate.queryForObject("SELECT name FROM cities WHERE id = ?", String.class, saved.getId()))
+                .isEqualTo("Resaved again");
+    }
+
+    @Test
+    void deleteByClimateRemovesCitiesWithCoordinatesAndGovernors() {
+        City lowest = cityService.saveCity(polar("Polar 1", new Human("Mayor", 1.8)));
+        City next = cityService.saveCity(polar("Polar 2", null));
+        City other = cityService.saveCity(city("Oceanic", null, null, null));
+
+        cityService.deleteCityByClimate(Climate.POLAR_ICECAP);
+
+        assertThat(exists("cities", lowest.getId())).isFalse();
+        assertThat(exists("coordinates", lowest.getCoordinates().getId())).isFalse();
+        assertThat(exists("humans", lowest.getGovernor().getId())).isFalse();
+        assertThat(exists("cities", next.getId())).isTrue();
+
+        BulkDeleteResult result = cityBulkDeleteService.deleteByClimate(Climate.POLAR_ICECAP);
+
+        assertThat(result.getDeleted()).isEqualTo(1);
+        assertThat(exists("cities", next.getId())).isFalse();
+        assertThat(exists("coordinates", next.getCoordinates().getId())).isFalse();
+        assertThat(exists("cities", other.getId())).isTrue();
+    }
+
+    @Test
+    void changesCarryTheCommittedRowVersion() {
+        // sends anything pending, a resync from another test included
+        cityChangeFeed.flush();
+        CityChangeBatch start = cityChangeFeed.since(null, 0);
+        City from = cityService.saveCity(city("Source", null, null, null));
+        City to = cityService.saveCity(city("Target", null, null, null));
+        City created = cityService.saveCity(city("Bystander", null, null, null));
+        cityService.relocatePopulation(from.getId(), to.getId());
+        cityChangeFeed.flush();
+
+        Map<Integer, Long> versions = new HashMap<>();
+        for (CityChange change : cityChangeFeed.since(start.getEpoch(), start.getLastSequence()).getChanges()) {
+            versions.put(change.getId(), (Long) change.getFields().get("version"));
+        }
+        Long stored = jdbcTemplate.queryForObject("SELECT version FROM cities WHERE id = ?", Long.class, to.getId());
+        assertThat(stored).isEqualTo(to.getVersion() + 1);
+        assertThat(created.getVersion()).isNotNull();
+        assertThat(versions).containsEntry(from.getId(), from.getVersion() + 1).containsEntry(to.getId(), stored)
+                .containsEntry(created.getId(), created.getVersion());
+    }
+
+    @Test
+    void cursorPagesWalkTiedKeysInIdOrder() {
+        List<Integer> ids = new ArrayList<>();
+        for (int population : new int[]{300, 100, 300, 200, 300}) {
+            City city = city("Keyset", null, null, null);
+            city.setPopulation(population);
+            ids.add(cityService.saveCity(city).getId());
+        }
+
+        assertThat(walk("asc")).containsExactly(ids.get(1), ids.get(3), ids.get(0), ids.get(2), ids.get(4));
+        assertThat(walk("desc")).containsExactly(ids.get(4), ids.get(2), ids.get(0), ids.get(3), ids.get(1));
+        assertThatThrownBy(() -> cityService.getCitiesAfter("keyset", "population", "asc", null, Integer.MAX_VALUE))
+                .isInstanceOf(BadRequestException.class);
+    }
+
+    @Test
+    void startupCheckRejectsSequenceNotSteppingByAllocationSize() throws Exception {
+        pooledSequenceCheck.afterPropertiesSet();
+
+        jdbcTemplate.execute("ALTER SEQUENCE humans_id_seq INCREMENT BY 1");
+        try {
+            assertThatThrownBy(pooledSequenceCheck::afterPropertiesSet)
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("humans_id_seq increments by 1");
+        } finally {
+            jdbcTemplate.execute("ALTER SEQUENCE humans_id_seq INCREMENT BY 50");
+        }
+    }
+
+    private List<Integer> walk(String sortDir) {
+        List<Integer> seen = new ArrayList<>();
+        String after = null;
+        do {
+            CursorSlice<City> slice = cityService.getCitiesAfter("keyset", "population", sortDir, after, 2);
+            slice.getContent().forEach(city -> seen.add(city.getId()));
+            after = slice.getNextCursor();
+        } while (after != null);
+        return seen;
+    }
+
+    private boolean exists(String table, Number id) {
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table + " WHERE id = ?", Integer.class, id);
+        return count != null && count > 0;
+    }
+
+    private static City city(String name, Date establishmentDate, Float metersAboveSeaLevel, Human governor) {
+        City city = new City(name, new Coordinates(1.0, 2.0f), 10f, 100, Climate.OCEANIC, StandardOfLiving.VERY_LOW,
+                governor);
+        city.setEstablishmentDate(establishmentDate);
+        city.setMetersAboveSeaLevel(metersAboveSeaLevel);
+        return city;
+    }
+
+    private static City polar(String name, Human governor) {
+        City city = city(name, null, null, governor);
+        city.setClimate(Climate.POLAR_ICECAP);
+        return city;
+    }
+}
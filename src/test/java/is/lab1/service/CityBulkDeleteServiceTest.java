@@ -0,0 +1,144 @@
+package is.lab1.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import is.lab1.dto.BulkDeleteResult;
+import is.lab1.model.Climate;
+import is.lab1.repository.CityRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * The chunk loop against an in-memory stand-in for {@link CityRepository#deleteByClimate}
+ * and a transaction manager that only runs the synchronizations; the statement itself is
+ * covered against PostgreSQL in CityRepositoryPostgresTest.
+ */
+class CityBulkDeleteServiceTest {
+
+    private final TreeMap<Integer, Climate> rows = new TreeMap<>();
+    private final List<Integer> cursors = new ArrayList<>();
+    private final CityTableVersion cityTableVersion = new CityTableVersion();
+    private int failOnChunk = -1;
+    private CityBulkDeleteService service;
+
+    @BeforeEach
+    void newService() {
+        CityRepository repository = (CityRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{CityRepository.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("deleteByClimate")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    return deleteByClimate(Climate.valueOf((String) args[0]), (Integer) args[1], (Integer) args[2]);
+                });
+        service = new CityBulkDeleteService(repository, new SynchronizingTransactionManager(), new ObjectMapper(),
+                new CityChangeFeed(null, cityTableVersion, 10), new CityCache(10), new CityFragmentCache(0),
+                new CityStatistics(repository), new CityFacetIndex(null), cityTableVersion, 2);
+    }
+
+    @Test
+    void deletesInChunksUntilOneComesBackShort() {
+        for (int id = 1; id <= 6; id++) {
+            rows.put(id, id == 4 ? Climate.OCEANIC : Climate.POLAR_ICECAP);
+        }
+        List<Long> progress = new ArrayList<>();
+
+        BulkDeleteResult result = service.deleteByClimate(Climate.POLAR_ICECAP, r -> progress.add(r.getDeleted()));
+
+        assertThat(result.getDeleted()).isEqualTo(5);
+        assertThat(result.getChunks()).isEqualTo(3);
+        assertThat(result.isDone()).isTrue();
+        assertThat(rows).containsOnlyKeys(4);
+        assertThat(cursors).containsExactly(Integer.MIN_VALUE, 2, 5);
+        assertThat(progress).containsExactly(2L, 4L, 5L);
+        // one bump per committed chunk and one for the resync
+        assertThat(cityTableVersion.current().getCounter()).isEqualTo(4);
+    }
+
+    @Test
+    void fullLastChunkNeedsOneEmptyRound() {
+        rows.put(1, Climate.POLAR_ICECAP);
+        rows.put(2, Climate.POLAR_ICECAP);
+
+        BulkDeleteResult result = service.deleteByClimate(Climate.POLAR_ICECAP);
+
+        assertThat(result.getDeleted()).isEqualTo(2);
+        assertThat(cursors).containsExactly(Integer.MIN_VALUE, 2);
+        assertThat(cityTableVersion.current().getCounter()).isEqualTo(2);
+    }
+
+    @Test
+    void nothingToDeleteSendsNoResync() {
+        rows.put(1, Climate.OCEANIC);
+
+        BulkDeleteResult result = service.deleteByClimate(Climate.POLAR_ICECAP);
+
+        assertThat(result.getDeleted()).isZero();
+        assertThat(result.isDone()).isTrue();
+        assertThat(cityTableVersion.current().getCounter()).isZero();
+    }
+
+    @Test
+    void failingChunkStopsTheRunAndKeepsEarlierChunks() {
+        for (int id = 1; id <= 5; id++) {
+            rows.put(id, Climate.POLAR_ICECAP);
+        }
+        failOnChunk = 2;
+
+        assertThatThrownBy(() -> service.deleteByClimate(Climate.POLAR_ICECAP))
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(rows).containsOnlyKeys(3, 4, 5);
+        // the first chunk committed, so subscribers still get a resync
+        assertThat(cityTableVersion.current().getCounter()).isEqualTo(2);
+    }
+
+    private Map<Integer, Object[]> deleteByClimate(Climate climate, int afterId, int limit) {
+        cursors.add(afterId);
+        if (cursors.size() == failOnChunk) {
+            throw new IllegalStateException("chunk failed");
+        }
+        Map<Integer, Object[]> deleted = new LinkedHashMap<>();
+        for (Integer id : new ArrayList<>(rows.tailMap(afterId, false).keySet())) {
+            if (deleted.size() == limit) {
+                break;
+            }
+            if (rows.get(id) == climate) {
+                rows.remove(id);
+                deleted.put(id, new Object[]{climate.name(), 1L, 100L, 10.0, 0L, null});
+            }
+        }
+        return deleted;
+    }
+
+    private static final class SynchronizingTransactionManager extends AbstractPlatformTransactionManager {
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
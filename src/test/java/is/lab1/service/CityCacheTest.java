@@ -0,0 +1,60 @@
+package is.lab1.service;
+
+import is.lab1.model.City;
+import is.lab1.model.Climate;
+import is.lab1.model.Coordinates;
+import is.lab1.model.StandardOfLiving;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A writer's eviction that lands while a load is in flight is simulated from inside the loader.
+ */
+class CityCacheTest {
+
+    private final CityCache cache = new CityCache(10);
+
+    @Test
+    void loadedCityIsServedFromTheCache() {
+        City city = city(1, 1);
+        cache.get(1, id -> Optional.of(city));
+
+        assertThat(cache.get(1, id -> Optional.of(city(1, 2)))).containsSame(city);
+        assertThat(cache.getStats().getHits()).isEqualTo(1);
+    }
+
+    @Test
+    void loadOvertakenByAnEvictionIsReturnedButNotCached() {
+        City stale = city(1, 1);
+        assertThat(cache.get(1, id -> {
+            cache.evict(1);
+            return Optional.of(stale);
+        })).containsSame(stale);
+
+        City fresh = city(1, 2);
+        assertThat(cache.get(1, id -> Optional.of(fresh))).containsSame(fresh);
+        assertThat(cache.get(1, id -> Optional.empty())).containsSame(fresh);
+    }
+
+    @Test
+    void evictionOfAnotherCityDoesNotBlockCaching() {
+        City city = city(1, 1);
+        cache.get(1, id -> {
+            cache.evict(2);
+            return Optional.of(city);
+        });
+
+        assertThat(cache.get(1, id -> Optional.empty())).containsSame(city);
+    }
+
+    private static City city(int id, long version) {
+        City city = new City("City " + id, new Coordinates(1.0, 2.0f), 10f, 100, Climate.OCEANIC,
+                StandardOfLiving.VERY_LOW, null);
+        city.setId(id);
+        city.setVersion(version);
+        return city;
+    }
+}
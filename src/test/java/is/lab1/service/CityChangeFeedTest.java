@@ -0,0 +1,82 @@
+package is.lab1.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import is.lab1.controller.WebSocketController;
+import is.lab1.dto.CityChange;
+import is.lab1.dto.CityChangeBatch;
+import is.lab1.model.City;
+import is.lab1.model.Climate;
+import is.lab1.model.Coordinates;
+import is.lab1.model.StandardOfLiving;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Changes are published without a transaction, so they are enqueued at once and in the
+ * order given, standing in for after-commit hooks that ran out of order.
+ */
+class CityChangeFeedTest {
+
+    private final List<CityChangeBatch> sent = new ArrayList<>();
+    private final CityChangeFeed feed = new CityChangeFeed(new WebSocketController(null, new SimpleMeterRegistry()) {
+        @Override
+        public void sendChanges(CityChangeBatch batch) {
+            sent.add(batch);
+        }
+    }, new CityTableVersion(), 10);
+
+    @Test
+    void olderUpdateDoesNotOverwriteNewerOneInTheSameWindow() {
+        feed.publish(CityChange.updated(city(1, "Newer", 3)));
+        feed.publish(CityChange.updated(city(1, "Older", 2)));
+        feed.flush();
+
+        CityChange change = sent.get(0).getChanges().get(0);
+        assertThat(change.getFields()).containsEntry("name", "Newer").containsEntry("version", 3L);
+    }
+
+    @Test
+    void updateAfterDeleteDoesNotResurrectTheCity() {
+        feed.publish(CityChange.updated(city(1, "Kept", 1)));
+        feed.publish(CityChange.deleted(1));
+        feed.publish(CityChange.population(1, 500, 2));
+        feed.flush();
+
+        assertThat(sent.get(0).getChanges()).extracting(CityChange::getType).containsExactly(CityChange.Type.DELETED);
+    }
+
+    @Test
+    void staleChangeArrivingInALaterWindowIsDropped() {
+        feed.publish(CityChange.population(1, 500, 4));
+        feed.flush();
+        feed.publish(CityChange.updated(city(1, "Older", 3)));
+        feed.publish(CityChange.deleted(2));
+        feed.publish(CityChange.population(2, 10, 7));
+        feed.flush();
+
+        assertThat(sent).hasSize(2);
+        assertThat(sent.get(1).getChanges()).extracting(CityChange::getId).containsExactly(2);
+    }
+
+    @Test
+    void createdAndDeletedInOneWindowCancelOut() {
+        feed.publish(CityChange.created(city(1, "Brief", 1)));
+        feed.publish(CityChange.deleted(1));
+        feed.publish(CityChange.population(1, 5, 2));
+        feed.flush();
+
+        assertThat(sent).isEmpty();
+    }
+
+    private static City city(int id, String name, long version) {
+        City city = new City(name, new Coordinates(1.0, 2.0f), 10f, 100, Climate.OCEANIC,
+                StandardOfLiving.VERY_LOW, null);
+        city.setId(id);
+        city.setVersion(version);
+        return city;
+    }
+}
@@ -0,0 +1,124 @@
+package is.lab1.service;
+
+import is.lab1.dto.CityFacets;
+import is.lab1.model.City;
+import is.lab1.model.Climate;
+import is.lab1.model.Coordinates;
+import is.lab1.model.Government;
+import is.lab1.model.StandardOfLiving;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Drives the bitmaps directly against a bare H2 table; a write that has to land in the middle
+ * of a rebuild is run from the data source, just before the rebuild reads the table.
+ */
+class CityFacetIndexTest {
+
+    private final DriverManagerDataSource dataSource =
+            new DriverManagerDataSource("jdbc:h2:mem:facets;DB_CLOSE_DELAY=-1", "sa", "");
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+    private Runnable duringRebuild = () -> { };
+    private CityFacetIndex index;
+
+    @BeforeEach
+    void createTable() {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS cities");
+        jdbcTemplate.execute("CREATE TABLE cities (id INTEGER PRIMARY KEY, climate VARCHAR(32), " +
+                "government VARCHAR(32), standard_of_living VARCHAR(32), version BIGINT)");
+        index = new CityFacetIndex(new DelegatingDataSource(dataSource) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                Runnable write = duringRebuild;
+                duringRebuild = () -> { };
+                write.run();
+                return super.getConnection();
+            }
+        });
+    }
+
+    @Test
+    void countsEachColumnAgainstTheOtherFilters() {
+        insert(1, Climate.OCEANIC, Government.CORPORATOCRACY, StandardOfLiving.VERY_LOW, 1);
+        insert(2, Climate.OCEANIC, null, StandardOfLiving.ULTRA_LOW, 1);
+        insert(3, Climate.RAIN_FOREST, Government.PUPPET_STATE, StandardOfLiving.VERY_LOW, 1);
+
+        CityFacetIndex.Filter oceanic = new CityFacetIndex.Filter(List.of(Climate.OCEANIC), null, null, false);
+        CityFacets facets = index.facets(oceanic);
+
+        assertThat(facets.getTotal()).isEqualTo(2);
+        assertThat(facets.getClimate()).containsEntry("OCEANIC", 2L).containsEntry("RAIN_FOREST", 1L);
+        assertThat(facets.getGovernment()).containsEntry("CORPORATOCRACY", 1L).containsEntry("null", 1L)
+                .containsEntry("PUPPET_STATE", 0L);
+
+        CityFacetIndex.Filter either = new CityFacetIndex.Filter(List.of(Climate.RAIN_FOREST), List.of("null"), null, true);
+        assertThat(index.matchingIds(either, PageRequest.of(0, 10)).getContent()).containsExactly(2, 3);
+    }
+
+    @Test
+    void olderPutDoesNotOverwriteNewerOne() {
+        index.rebuild();
+
+        index.put(city(7, Climate.POLAR_ICECAP, 3));
+        index.put(city(7, Climate.OCEANIC, 2));
+
+        assertThat(ids(Climate.POLAR_ICECAP)).containsExactly(7);
+        assertThat(ids(Climate.OCEANIC)).isEmpty();
+    }
+
+    @Test
+    void putAfterRemoveDoesNotResurrectTheCity() {
+        index.rebuild();
+        index.put(city(7, Climate.OCEANIC, 1));
+
+        index.remove(7);
+        index.put(city(7, Climate.OCEANIC, 2));
+
+        assertThat(ids(Climate.OCEANIC)).isEmpty();
+    }
+
+    @Test
+    void writesDuringRebuildAreReplayedOnTheFreshBitmaps() {
+        insert(1, Climate.OCEANIC, null, StandardOfLiving.VERY_LOW, 5);
+        insert(2, Climate.OCEANIC, null, StandardOfLiving.VERY_LOW, 1);
+        duringRebuild = () -> {
+            // committed before the rebuild reads row 1, but its hook only runs now
+            index.put(city(1, Climate.RAIN_FOREST, 4));
+            index.put(city(3, Climate.RAIN_FOREST, 1));
+            index.remove(2);
+        };
+
+        index.rebuild();
+
+        assertThat(ids(Climate.OCEANIC)).containsExactly(1);
+        assertThat(ids(Climate.RAIN_FOREST)).containsExactly(3);
+    }
+
+    private List<Integer> ids(Climate climate) {
+        CityFacetIndex.Filter filter = new CityFacetIndex.Filter(List.of(climate), null, null, false);
+        return index.matchingIds(filter, PageRequest.of(0, 100)).getContent();
+    }
+
+    private void insert(int id, Climate climate, Government government, StandardOfLiving standard, long version) {
+        jdbcTemplate.update("INSERT INTO cities VALUES (?, ?, ?, ?, ?)", id, climate.name(),
+                government == null ? null : government.name(), standard.name(), version);
+    }
+
+    private static City city(int id, Climate climate, long version) {
+        City city = new City("City " + id, new Coordinates(1.0, 2.0f), 10f, 100, climate, StandardOfLiving.VERY_LOW, null);
+        city.setId(id);
+        city.setVersion(version);
+        return city;
+    }
+}
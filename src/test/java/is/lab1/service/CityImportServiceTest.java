@@ -0,0 +1,120 @@
+package is.lab1.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import is.lab1.dto.BulkImportResult;
+import is.lab1.repository.CityRepository;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Imports in chunks of two against a repository that only counts saved cities, and a
+ * transaction manager that only runs the synchronizations.
+ */
+class CityImportServiceTest {
+
+    private static final String RECORD = "{\"name\":\"Imported\",\"coordinates\":{\"x\":1.0,\"y\":2.0},"
+            + "\"area\":10.0,\"population\":100,\"climate\":\"OCEANIC\",\"standardOfLiving\":\"VERY_LOW\"}";
+
+    private final List<Object> saved = new ArrayList<>();
+    private final CityTableVersion cityTableVersion = new CityTableVersion();
+    private CityImportService service;
+
+    @BeforeEach
+    void newService() {
+        CityRepository repository = (CityRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{CityRepository.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("saveAll")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    ((Iterable<?>) args[0]).forEach(saved::add);
+                    return args[0];
+                });
+        service = new CityImportService(new ObjectMapper().findAndRegisterModules(),
+                Validation.buildDefaultValidatorFactory().getValidator(), repository,
+                new SynchronizingTransactionManager(), new CityChangeFeed(null, cityTableVersion, 10),
+                new CityStatistics(repository), cityTableVersion, new CityFacetIndex(null), 2, 10);
+    }
+
+    @Test
+    void completeImportSendsOneResync() throws IOException {
+        BulkImportResult result = service.importCities(body("[" + RECORD + "," + RECORD + "," + RECORD + "]", -1));
+
+        assertThat(result.getImported()).isEqualTo(3);
+        // one bump per committed chunk and one for the resync
+        assertThat(cityTableVersion.current().getCounter()).isEqualTo(3);
+    }
+
+    @Test
+    void bodyBreakingOffAfterACommittedChunkStillSendsResync() {
+        String json = "[" + RECORD + "," + RECORD + "," + RECORD + "]";
+        InputStream body = body(json, json.lastIndexOf(RECORD) + 10);
+
+        assertThatThrownBy(() -> service.importCities(body)).isInstanceOf(IOException.class);
+
+        assertThat(saved).hasSize(2);
+        assertThat(cityTableVersion.current().getCounter()).isEqualTo(2);
+    }
+
+    @Test
+    void bodyBreakingOffBeforeAnyChunkSendsNoResync() {
+        InputStream body = body("[" + RECORD + "]", 10);
+
+        assertThatThrownBy(() -> service.importCities(body)).isInstanceOf(IOException.class);
+
+        assertThat(cityTableVersion.current().getCounter()).isZero();
+    }
+
+    // fails like an aborted upload once the given number of bytes has been read, -1 never
+    private static InputStream body(String json, int failAfter) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        return new FilterInputStream(new ByteArrayInputStream(bytes)) {
+            private int read;
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (failAfter >= 0 && read >= failAfter) {
+                    throw new IOException("Connection reset by peer");
+                }
+                int n = super.read(b, off, failAfter < 0 ? len : Math.min(len, failAfter - read));
+                read += Math.max(n, 0);
+                return n;
+            }
+        };
+    }
+
+    private static final class SynchronizingTransactionManager extends AbstractPlatformTransactionManager {
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
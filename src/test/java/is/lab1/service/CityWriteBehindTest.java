@@ -0,0 +1,154 @@
+package is.lab1.service;
+
+import is.lab1.dto.CityWriteStatus;
+import is.lab1.exception.ServiceUnavailableException;
+import is.lab1.exception.TooManyRequestsException;
+import is.lab1.model.City;
+import is.lab1.model.Climate;
+import is.lab1.model.Coordinates;
+import is.lab1.model.Human;
+import is.lab1.model.StandardOfLiving;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Each test drives its own CityWriteBehind with a queue of 5 and groups of 3, flushing by
+ * hand. Dropping an instance without flushing stands in for a crash: whatever the new
+ * instance knows comes from the database, as it would after a restart.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:writebehind;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.websocket.sockjs.enabled=false"
+})
+class CityWriteBehindTest {
+
+    @Autowired
+    private CityService cityService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private CityWriteBehind writeBehind;
+
+    @BeforeEach
+    void newWriter() {
+        writeBehind = new CityWriteBehind(cityService, 5, 3, 100);
+    }
+
+    @Test
+    void acceptedCitiesAreWrittenInGroupsOnFlush() {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            CityWriteStatus status = writeBehind.submit(city("Grouped"));
+            assertThat(status.getState()).isEqualTo(CityWriteStatus.State.QUEUED);
+            ids.add(status.getId());
+        }
+        assertThat(ids).doesNotHaveDuplicates();
+        assertThat(countByName("Grouped")).isZero();
+        assertThat(writeBehind.getStatus(ids.get(0))).get()
+                .extracting(CityWriteStatus::getState).isEqualTo(CityWriteStatus.State.QUEUED);
+
+        assertThat(writeBehind.flush()).isEqualTo(5);
+
+        assertThat(countByName("Grouped")).isEqualTo(5);
+        assertThat(writeBehind.getStats().getBatches()).isEqualTo(2);
+        for (Integer id : ids) {
+            assertThat(writeBehind.getStatus(id)).get()
+                    .extracting(CityWriteStatus::getState).isEqualTo(CityWriteStatus.State.WRITTEN);
+            assertThat(cityService.getCityById(id)).get().extracting(City::getName).isEqualTo("Grouped");
+        }
+    }
+
+    @Test
+    void fullQueueRejectsUntilFlushed() {
+        for (int i = 0; i < 5; i++) {
+            writeBehind.submit(city("Backpressure"));
+        }
+
+        assertThatThrownBy(() -> writeBehind.submit(city("Backpressure")))
+                .isInstanceOf(TooManyRequestsException.class);
+        assertThat(writeBehind.getStats().getRejected()).isEqualTo(1);
+        assertThat(writeBehind.getStats().getQueued()).isEqualTo(5);
+
+        writeBehind.flush();
+        assertThat(writeBehind.submit(city("Backpressure")).getState()).isEqualTo(CityWriteStatus.State.QUEUED);
+        writeBehind.flush();
+        assertThat(countByName("Backpressure")).isEqualTo(6);
+    }
+
+    @Test
+    void failingCityDoesNotFailItsGroup() {
+        Integer conflicting = writeBehind.submit(city("Conflict")).getId();
+        Integer second = writeBehind.submit(city("Conflict")).getId();
+        Integer third = writeBehind.submit(city("Conflict")).getId();
+        // another writer already holds the row under the reserved id
+        City squatter = city("Squatter");
+        squatter.setId(conflicting);
+        cityService.insertCities(List.of(squatter));
+
+        assertThat(writeBehind.flush()).isEqualTo(2);
+
+        CityWriteStatus failed = writeBehind.getStatus(conflicting).orElseThrow();
+        assertThat(failed.getState()).isEqualTo(CityWriteStatus.State.FAILED);
+        assertThat(failed.getError()).isNotBlank();
+        assertThat(writeBehind.getStatus(second)).get()
+                .extracting(CityWriteStatus::getState).isEqualTo(CityWriteStatus.State.WRITTEN);
+        assertThat(writeBehind.getStatus(third)).get()
+                .extracting(CityWriteStatus::getState).isEqualTo(CityWriteStatus.State.WRITTEN);
+        assertThat(countByName("Conflict")).isEqualTo(2);
+        assertThat(writeBehind.getStats().getFailed()).isEqualTo(1);
+    }
+
+    @Test
+    void crashLosesOnlyUnflushedCitiesAndNeverReusesTheirIds() {
+        Integer flushed = writeBehind.submit(city("Durable")).getId();
+        writeBehind.flush();
+        Integer lost = writeBehind.submit(city("Lost")).getId();
+
+        CityWriteBehind restarted = new CityWriteBehind(cityService, 5, 3, 100);
+
+        assertThat(restarted.getStatus(flushed)).get()
+                .extracting(CityWriteStatus::getState).isEqualTo(CityWriteStatus.State.WRITTEN);
+        assertThat(restarted.getStatus(lost)).isEmpty();
+        assertThat(countByName("Lost")).isZero();
+        // a new process allocates from the database sequence, which is past the whole block
+        Long next = jdbcTemplate.queryForObject("SELECT nextval('cities_id_seq')", Long.class);
+        assertThat(next).isGreaterThan(lost.longValue());
+        assertThat(restarted.submit(city("After")).getId()).isGreaterThan(lost);
+    }
+
+    @Test
+    void shutdownDrainsQueueAndStopsAccepting() {
+        Integer id = writeBehind.submit(city("Drained")).getId();
+
+        writeBehind.shutdown();
+
+        assertThat(writeBehind.getStatus(id)).get()
+                .extracting(CityWriteStatus::getState).isEqualTo(CityWriteStatus.State.WRITTEN);
+        assertThat(countByName("Drained")).isEqualTo(1);
+        assertThatThrownBy(() -> writeBehind.submit(city("Drained")))
+                .isInstanceOf(ServiceUnavailableException.class);
+    }
+
+    private int countByName(String name) {
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM cities WHERE name = ?", Integer.class, name);
+        return count == null ? 0 : count;
+    }
+
+    private static City city(String name) {
+        return new City(name, new Coordinates(1.0, 2.0f), 10f, 100, Climate.OCEANIC, StandardOfLiving.VERY_LOW,
+                new Human("Mayor", 1.8));
+    }
+}